@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.artdecor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ArtDecorConcept.identicalTo, which compares a concept with its previous version, and ArtDecorConcept.writeXML,
+ * which renders a concept tree
+ * Lives in the artdecor package, as writeXML and addChild are package-private
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArtDecorConceptBenchmark {
+    // depth of the rendered concept tree; every group has 4 children
+    @Param({"2", "6"})
+    public int depth;
+
+    private ArtDecorConcept concept;
+    private ArtDecorConcept previousConcept;
+    private ArtDecorConcept root;
+    private final Writer writer = Writer.nullWriter();
+    private int conceptCounter;
+
+    @Setup
+    public void setUp() {
+        concept = createConcept("Snijvlak", "");
+        previousConcept = createConcept("Snijvlak", "");
+        root = createTree("root", depth);
+    }
+
+    /**
+     * creates a concept with descriptions in two languages and a property
+     * @param conceptId the concept id
+     * @param parent    the parent
+     * @return the concept
+     */
+    private ArtDecorConcept createConcept(String conceptId, String parent){
+        Map<String, String> languageDescriptions = new HashMap<>();
+        languageDescriptions.put("nl", "Snijvlak van het resectiepreparaat");
+        languageDescriptions.put("en", "Surgical margin finding (finding)");
+        ArtDecorConcept artDecorConcept = new ArtDecorConcept(conceptId, "2.16.840.1.113883.2.4.3.11.60.1.2."+(++conceptCounter), "2017-01-17T00:00:00", "code", parent, "draft", languageDescriptions);
+        Map<String, String> propertyMap = new HashMap<>();
+        propertyMap.put("PALGA_COLNAME", conceptId);
+        artDecorConcept.setPropertyMap(propertyMap);
+        artDecorConcept.setArtdecorConceptListId("2.16.840.1.113883.2.4.3.11.60.1.5."+conceptCounter);
+        artDecorConcept.setXMLConceptListTypeStatus("NEW");
+        return artDecorConcept;
+    }
+
+    /**
+     * creates a concept tree in which every group has 4 children
+     * @param conceptId id of the root of the tree
+     * @param depth     depth of the tree
+     * @return the root of the tree
+     */
+    private ArtDecorConcept createTree(String conceptId, int depth){
+        ArtDecorConcept artDecorConcept = createConcept(conceptId, "");
+        if(depth>1){
+            for(int i=0; i<4; i++){
+                artDecorConcept.addChild(createTree(conceptId+"_"+i, depth-1));
+            }
+        }
+        return artDecorConcept;
+    }
+
+    @Benchmark
+    public boolean identicalTo() {
+        return concept.identicalTo(previousConcept);
+    }
+
+    @Benchmark
+    public Writer writeXML() throws Exception {
+        root.writeXML(writer);
+        return writer;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.artdecor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ArtDecorValueSet.sameValues, which decides whether a codelist changed between two versions
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArtDecorValueSetBenchmark {
+    @Param({"5", "50", "500"})
+    public int optionCount;
+
+    private ArtDecorValueSet valueSet;
+    private ArtDecorValueSet sameValueSet;
+    private ArtDecorValueSet changedValueSet;
+
+    @Setup
+    public void setUp() {
+        valueSet = createValueSet(optionCount, false, -1);
+        // same options in a different order
+        sameValueSet = createValueSet(optionCount, true, -1);
+        // the description of the last option differs
+        changedValueSet = createValueSet(optionCount, false, optionCount-1);
+    }
+
+    /**
+     * creates a valueset with options in two languages
+     * @param optionCount   number of options
+     * @param reversed      whether the options are added in reverse order
+     * @param changedOption option whose description is changed; -1 for none
+     * @return the valueset
+     */
+    static ArtDecorValueSet createValueSet(int optionCount, boolean reversed, int changedOption){
+        ArtDecorValueSet artDecorValueSet = new ArtDecorValueSet("Snijvlak", "Snijvlak", "1", "2017-01-17T00:00:00");
+        for(int i=0; i<optionCount; i++){
+            int option = reversed ? optionCount-1-i : i;
+            String description = "Surgical margin finding "+option+(option==changedOption ? " (changed)" : "");
+            artDecorValueSet.addConceptOption(String.valueOf(395536000+option), "2.16.840.1.113883.6.96", "SNOMED CT", description, false);
+            artDecorValueSet.addConceptDesignation("nl", "snijvlak "+option, false);
+            artDecorValueSet.addConceptDesignation("en", description, false);
+        }
+        return artDecorValueSet;
+    }
+
+    @Benchmark
+    public boolean sameValues() {
+        return valueSet.sameValues(sameValueSet);
+    }
+
+    @Benchmark
+    public boolean changedValues() {
+        return valueSet.sameValues(changedValueSet);
+    }
+}
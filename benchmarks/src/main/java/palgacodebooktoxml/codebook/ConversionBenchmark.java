@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import palgacodebooktoxml.settings.IdentifierManager;
+import palgacodebooktoxml.settings.RunParameters;
+import palgacodebooktoxml.utils.CodebookGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End to end conversion of generated codebooks: reading, transforming and writing the output
+ * Run the main method, or the benchmarks jar with -prof gc, to see the allocations as well
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+    @Param({"1000", "10000"})
+    public int conceptCount;
+
+    @Param({"5"})
+    public int versions;
+
+    @Param({"4"})
+    public int depth;
+
+    @Param({"0.05"})
+    public double changeRate;
+
+    private File codebookDirectory;
+    private RunParameters runParameters;
+
+    @Setup
+    public void setUp() throws IOException {
+        codebookDirectory = Files.createTempDirectory("codebooks").toFile();
+        CodebookGenerator codebookGenerator = new CodebookGenerator(conceptCount, versions);
+        codebookGenerator.setDepth(depth);
+        codebookGenerator.setChangeRate(changeRate);
+        codebookGenerator.write(codebookDirectory);
+
+        runParameters = new RunParameters(codebookDirectory.getPath(), "2.16.840.1.113883.2.4.3.11.60.1", "bench", "true",
+                "bench;bench@example.org;Benchmark", "Benchmark;2020;author", "draft");
+        runParameters.addLanguageSettings("nl", "Benchmark omschrijving", "Benchmark naam");
+        runParameters.addLanguageSettings("en", "Benchmark description", "Benchmark name");
+        runParameters.setDefaultLanguage("nl");
+        // measure the parsing of the Excel files rather than the codebook cache
+        runParameters.setCodebookCache(false);
+        runParameters.setRunReport(false);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(codebookDirectory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void convert() throws Exception {
+        IdentifierManager.createIdentifierManager(runParameters);
+        CodebookManager codebookManager = CodebookManager.readCodebooks(runParameters);
+        CodebookToArtDecorConvertor codebookToArtDecorConvertor = new CodebookToArtDecorConvertor(codebookManager, runParameters);
+        codebookToArtDecorConvertor.convert(runParameters.getOutputFile());
+    }
+
+    /**
+     * runs the benchmark with the GC profiler, which reports the allocation rate and the collections
+     * @param args not used
+     * @throws RunnerException
+     */
+    public static void main(String [] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ConversionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.utils;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExcelUtils.getValue as used while parsing a codebook row: by column index on the row's values, and by column name
+ * on a workbook row
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetValueBenchmark {
+    private static final List<String> HEADER = Arrays.asList("id", "description_nl", "description_en", "codesystem", "code",
+            "description_code", "codelist_ref", "data_type", "properties", "parent");
+
+    private List<String> values;
+    private List<String> headerList;
+    private Workbook workbook;
+    private Row row;
+
+    // the last column is the worst case for a lookup by name
+    @Param({"id", "parent"})
+    public String columnName;
+    private int columnIndex;
+
+    @Setup
+    public void setUp() {
+        values = Arrays.asList("Snijvlak", "Snijvlak", "Surgical margin finding (finding)", "SNOMED CT", "395536008",
+                "Surgical margin finding (finding)", "Snijvlak", "code", "{PALGA_COLNAME=Snijvlak}", "Tumor");
+        headerList = ExcelUtils.getHeaderAsList(HEADER);
+        columnIndex = headerList.indexOf(columnName);
+
+        workbook = ExcelUtils.createXLSXWorkbook();
+        Sheet sheet = workbook.createSheet("Codebook");
+        ExcelUtils.writeValues(sheet, values);
+        row = sheet.getRow(sheet.getLastRowNum());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        workbook.close();
+    }
+
+    @Benchmark
+    public String byColumnIndex() {
+        return ExcelUtils.getValue(values, columnIndex);
+    }
+
+    @Benchmark
+    public String byColumnName() {
+        return ExcelUtils.getValue(row, columnName, headerList);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares StringUtils.prepareValueForXML with the chain of regular expressions it replaced
+ * Lives in the utils package, as prepareValueForXML is package-private
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrepareValueForXMLBenchmark {
+
+    // typical cell values: plain text, text which needs escaping and text with odd whitespace
+    @Param({"Aantal inzendingen",
+            "Tumor < 5 mm & \"ruim\" ≥ 2 cm",
+            " Venous (large vessel)/lymphatic   invasion by tumor\tabsent (finding) "})
+    public String value;
+
+    @Benchmark
+    public String singlePass() {
+        return StringUtils.prepareValueForXML(value);
+    }
+
+    @Benchmark
+    public String regexChain() {
+        return regexPrepareValueForXML(value);
+    }
+
+    /**
+     * the previous implementation of StringUtils.prepareValueForXML
+     * @param value the value to check
+     * @return an acceptable xml value
+     */
+    private static String regexPrepareValueForXML(String value){
+        value = value.replaceAll("&", "&amp;");
+        value = value.replaceAll("<", "&lt;");
+        value = value.replaceAll(">", "&gt;");
+        value = value.replaceAll("'", "&apos;");
+        value = value.replaceAll("\"", "&quot;");
+        value = value.replaceAll("≥", "&gt;=");
+        value = value.replaceAll("≤", "&lt;=");
+        value = value.replaceAll("[\\p{Zs}\\s]+", " ");
+        return value.trim();
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import palgacodebooktoxml.codebook.CodebookManager;
+import palgacodebooktoxml.codebook.CodebookToArtDecorConvertor;
+import palgacodebooktoxml.settings.IdentifierManager;
+import palgacodebooktoxml.settings.RunParameters;
+import palgacodebooktoxml.settings.Statics;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Runs the conversion without the graphical interface, e.g. on a build server or in a batch job
+ * The settings are read from a properties file (--properties=file) and/or from arguments (--key=value), where
+ * arguments take precedence over the properties file. The keys are:
+ *
+ * codebookDirectory              directory that contains one or more codebooks (required)
+ * projectId                      ART-DECOR project id (required)
+ * projectPrefix                  ART-DECOR project prefix (required)
+ * experimental                   true/false
+ * statusCode                     draft/final
+ * authors                        userid;email address;name, one author per line
+ * copyright                      institute;year(s);author/contributor/reviewer, one per line
+ * languages                      comma separated list of languages, e.g. nl,en (required)
+ * defaultLanguage                default language; the first language if not specified
+ * projectName.(language)         project name in the language
+ * projectDescription.(language)  project description in the language
+ * outputFile                     output file; output.xml in the codebook directory if not specified
+ * readerThreads                  number of threads used to read the codebooks
+ * readAhead                      number of codebook versions read ahead of the conversion; 1 if not specified
+ * streamingReader                true/false, whether the codebooks are streamed
+ * codebookCache                  true/false, whether parsed codebooks are cached
+ * clearCodebookCache             true/false, whether the codebook cache is cleared first
+ * runReport                      true/false, whether a report with timings and counts is written next to the output
+ * validationLogLimit             number of problems of each kind that are logged; 50 if not specified
+ * validationReport               true/false, whether the problems are written to validation-report.xlsx in the codebook directory
+ * compressOutput                 true/false, whether the output is written as gzip (.gz is added to the file name)
+ * compressionLevel               gzip level, 1 (fastest) to 9 (smallest); 6 if not specified
+ * compressionThreads             number of threads which compress the output; 1 if not specified
+ * skipUnchangedOutput            true/false, whether an output file with the same contents is left as it is
+ * shardOutput                    true/false, whether the output is written as a file for each version with a manifest
+ * renderThreads                  number of threads used to render the datasets and valuesets; shardThreads is accepted as well
+ *
+ * Repeating --authors or --copyright on the command line adds a line.
+ *
+ * No JavaFX class is used, so the runner also works on machines without a display.
+ */
+public class CommandLineRunner {
+    static final int EXIT_OK = 0;
+    static final int EXIT_CONVERSION_FAILED = 1;
+    static final int EXIT_INVALID_ARGUMENTS = 2;
+
+    static {
+        // the default configuration logs to the TextAreaAppender, which needs JavaFX
+        if(System.getProperty("log4j.configurationFile")==null) {
+            System.setProperty("log4j.configurationFile", "log4j2-cli.xml");
+        }
+    }
+
+    private static final Logger logger = LogManager.getLogger(CommandLineRunner.class.getName());
+
+    private CommandLineRunner(){}
+
+    public static void main(String [] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * runs the conversion
+     * @param args the command line arguments
+     * @return the exit status
+     */
+    static int run(String [] args){
+        RunParameters runParameters;
+        try {
+            if(Arrays.asList(args).contains("--help")){
+                printUsage();
+                return EXIT_OK;
+            }
+            runParameters = createRunParameters(parseArguments(args));
+        } catch (IllegalArgumentException | IOException e){
+            System.err.println("Invalid arguments: "+e.getMessage());
+            printUsage();
+            return EXIT_INVALID_ARGUMENTS;
+        }
+
+        try {
+            logger.log(Level.INFO, "Reading codebooks...");
+            // reset the identifier manager
+            IdentifierManager.createIdentifierManager(runParameters);
+
+            // create the codebookmanager, finding the codebooks in the directory
+            CodebookManager codebookManager = CodebookManager.readCodebooks(runParameters);
+
+            // transform the codebooks to the artdecor datatypes and write the xml file, one version at a time
+            if(runParameters.shardOutput()){
+                logger.log(Level.INFO, "Transforming codebooks and writing ArtDecor XML shards to {}...", runParameters.getShardDirectory());
+            }
+            else {
+                logger.log(Level.INFO, "Transforming codebooks and writing ArtDecor XML file {}...", runParameters.getOutputFile());
+            }
+            CodebookToArtDecorConvertor codebookToArtDecorConvertor = new CodebookToArtDecorConvertor(codebookManager, runParameters);
+            codebookToArtDecorConvertor.convert(runParameters.getOutputFile());
+
+            logger.log(Level.INFO, "Finished!");
+            return EXIT_OK;
+        } catch (Exception e){
+            logger.log(Level.ERROR, "A fatal error occurred: {}", e.getMessage(), e);
+            return EXIT_CONVERSION_FAILED;
+        }
+    }
+
+    /**
+     * collects the settings from the properties file and the arguments
+     * @param args the command line arguments
+     * @return the settings
+     * @throws IOException
+     */
+    private static Properties parseArguments(String [] args) throws IOException {
+        Map<String, String> argumentMap = new LinkedHashMap<>();
+        for(String arg:args){
+            int index = arg.indexOf('=');
+            if(!arg.startsWith("--") || index==-1){
+                throw new IllegalArgumentException("unexpected argument "+arg+", use --key=value");
+            }
+            String key = arg.substring(2, index);
+            String value = arg.substring(index+1);
+            // multiple authors or copyright holders are given by repeating the argument
+            if(argumentMap.containsKey(key) && (key.equals("authors") || key.equals("copyright"))){
+                value = argumentMap.get(key)+"\n"+value;
+            }
+            argumentMap.put(key, value);
+        }
+
+        Properties properties = new Properties();
+        String propertiesFile = argumentMap.remove("properties");
+        if(propertiesFile!=null){
+            try (Reader reader = Files.newBufferedReader(Paths.get(propertiesFile), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        properties.putAll(argumentMap);
+        return properties;
+    }
+
+    /**
+     * creates the runparameters from the settings
+     * @param properties the settings
+     * @return the runparameters
+     */
+    private static RunParameters createRunParameters(Properties properties){
+        String codebookDirectory = getRequired(properties, "codebookDirectory");
+        if(!Files.isDirectory(Paths.get(codebookDirectory))){
+            throw new IllegalArgumentException("codebook directory "+codebookDirectory+" does not exist");
+        }
+        String projectId = getRequired(properties, "projectId");
+        String projectPrefix = getRequired(properties, "projectPrefix");
+        String experimental = getChoice(properties, "experimental", "false", "true", "false");
+        String statusCode = getChoice(properties, "statusCode", "draft", "draft", "final");
+        String authorString = properties.getProperty("authors", "").trim();
+        String copyrightString = properties.getProperty("copyright", "").trim();
+
+        RunParameters runParameters;
+        try {
+            runParameters = new RunParameters(codebookDirectory, projectId, projectPrefix, experimental, authorString, copyrightString, statusCode);
+        } catch (ArrayIndexOutOfBoundsException e){
+            throw new IllegalArgumentException("authors should be userid;email address;name and copyright institute;year(s);type");
+        }
+
+        List<String> languages = new ArrayList<>();
+        for(String language:getRequired(properties, "languages").split(",")){
+            language = language.trim();
+            if(!Statics.getLanguages().contains(language)){
+                throw new IllegalArgumentException("unsupported language "+language+", choose from "+Statics.getLanguages());
+            }
+            languages.add(language);
+            runParameters.addLanguageSettings(language, properties.getProperty("projectDescription."+language, ""), properties.getProperty("projectName."+language, ""));
+        }
+        String defaultLanguage = properties.getProperty("defaultLanguage", languages.get(0));
+        if(!languages.contains(defaultLanguage)){
+            throw new IllegalArgumentException("default language "+defaultLanguage+" is not one of the languages");
+        }
+        runParameters.setDefaultLanguage(defaultLanguage);
+
+        if(properties.containsKey("outputFile")){
+            runParameters.setOutputFile(properties.getProperty("outputFile"));
+        }
+        if(properties.containsKey("readerThreads")){
+            try {
+                runParameters.setReaderThreads(Integer.parseInt(properties.getProperty("readerThreads").trim()));
+            } catch (NumberFormatException e){
+                throw new IllegalArgumentException("readerThreads should be a number");
+            }
+        }
+        if(properties.containsKey("readAhead")){
+            try {
+                runParameters.setReadAhead(Integer.parseInt(properties.getProperty("readAhead").trim()));
+            } catch (NumberFormatException e){
+                throw new IllegalArgumentException("readAhead should be a number");
+            }
+        }
+        if(properties.containsKey("validationLogLimit")){
+            try {
+                runParameters.setValidationLogLimit(Integer.parseInt(properties.getProperty("validationLogLimit").trim()));
+            } catch (NumberFormatException e){
+                throw new IllegalArgumentException("validationLogLimit should be a number");
+            }
+        }
+        runParameters.setCompressOutput(Boolean.parseBoolean(getChoice(properties, "compressOutput", "false", "true", "false")));
+        runParameters.setCompressionLevel(Integer.parseInt(getChoice(properties, "compressionLevel", "6", "1", "2", "3", "4", "5", "6", "7", "8", "9")));
+        if(properties.containsKey("compressionThreads")){
+            try {
+                runParameters.setCompressionThreads(Integer.parseInt(properties.getProperty("compressionThreads").trim()));
+            } catch (NumberFormatException e){
+                throw new IllegalArgumentException("compressionThreads should be a number");
+            }
+        }
+        runParameters.setSkipUnchangedOutput(Boolean.parseBoolean(getChoice(properties, "skipUnchangedOutput", "true", "true", "false")));
+        runParameters.setShardOutput(Boolean.parseBoolean(getChoice(properties, "shardOutput", "false", "true", "false")));
+        // renderThreads used to be called shardThreads
+        String renderThreadsKey = properties.containsKey("renderThreads") ? "renderThreads" : "shardThreads";
+        if(properties.containsKey(renderThreadsKey)){
+            try {
+                runParameters.setRenderThreads(Integer.parseInt(properties.getProperty(renderThreadsKey).trim()));
+            } catch (NumberFormatException e){
+                throw new IllegalArgumentException(renderThreadsKey+" should be a number");
+            }
+        }
+        runParameters.setStreamingReader(Boolean.parseBoolean(getChoice(properties, "streamingReader", "true", "true", "false")));
+        runParameters.setCodebookCache(Boolean.parseBoolean(getChoice(properties, "codebookCache", "true", "true", "false")));
+        runParameters.setClearCodebookCache(Boolean.parseBoolean(getChoice(properties, "clearCodebookCache", "false", "true", "false")));
+        runParameters.setRunReport(Boolean.parseBoolean(getChoice(properties, "runReport", "true", "true", "false")));
+        runParameters.setValidationReport(Boolean.parseBoolean(getChoice(properties, "validationReport", "true", "true", "false")));
+        return runParameters;
+    }
+
+    /**
+     * returns a setting which must be present
+     * @param properties the settings
+     * @param key        the setting
+     * @return the value
+     */
+    private static String getRequired(Properties properties, String key){
+        String value = properties.getProperty(key, "").trim();
+        if(value.equals("")){
+            throw new IllegalArgumentException(key+" is required");
+        }
+        return value;
+    }
+
+    /**
+     * returns a setting which must have one of the allowed values
+     * @param properties   the settings
+     * @param key          the setting
+     * @param defaultValue the value if the setting is absent
+     * @param allowed      the allowed values
+     * @return the value
+     */
+    private static String getChoice(Properties properties, String key, String defaultValue, String... allowed){
+        String value = properties.getProperty(key, defaultValue).trim().toLowerCase();
+        if(!Arrays.asList(allowed).contains(value)){
+            throw new IllegalArgumentException(key+" should be one of "+Arrays.toString(allowed));
+        }
+        return value;
+    }
+
+    /**
+     * prints how to use the runner
+     */
+    private static void printUsage(){
+        System.err.println("Usage: java -cp <jar> palgacodebooktoxml.CommandLineRunner [--properties=<file>] [--<key>=<value> ...]\n" +
+                "required: codebookDirectory, projectId, projectPrefix, languages\n" +
+                "optional: experimental, statusCode, authors, copyright, defaultLanguage, projectName.<language>,\n" +
+                "          projectDescription.<language>, outputFile, readerThreads, readAhead, streamingReader, codebookCache,\n" +
+                "          clearCodebookCache, runReport, validationLogLimit, validationReport, compressOutput, compressionLevel,\n" +
+                "          compressionThreads, skipUnchangedOutput, shardOutput, renderThreads\n" +
+                "exit status: "+EXIT_OK+" success, "+EXIT_CONVERSION_FAILED+" conversion failed, "+EXIT_INVALID_ARGUMENTS+" invalid arguments");
+    }
+}
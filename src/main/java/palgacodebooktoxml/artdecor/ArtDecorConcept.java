@@ -24,6 +24,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import palgacodebooktoxml.settings.Statics;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.*;
 
 /**
@@ -34,14 +36,15 @@ public class ArtDecorConcept {
 
     private final String statusCode;
     private final String effectiveDate;
-    private String type = "item";
     // code, text, etc.
     private final String valueDomainType;
 
     // date for references
     private String refEffectiveDate="";
 
-    private final List<LanguageConcept> languageConceptList = new ArrayList<>();
+    // sorted by language; fixed at construction, as is its fingerprint, which is used to compare concepts
+    private final List<LanguageConcept> languageConceptList;
+    private final Fingerprint fingerprint;
     private Map<String, String> propertyMap;
 
     private final String artdecorConceptId;
@@ -55,13 +58,31 @@ public class ArtDecorConcept {
     private String parent="";
     private final List<ArtDecorConcept> children = new ArrayList<>();
 
-    public ArtDecorConcept(String conceptId, String artdecorConceptId, String effectiveDate, String valueDomainType, String parent, String statusCode){
+    /**
+     * create the concept
+     * @param conceptId            the concept's id in the codebook
+     * @param artdecorConceptId    the concept's ART-DECOR id
+     * @param effectiveDate        the effective date
+     * @param valueDomainType      code, text, etc.
+     * @param parent               the id of the parent concept
+     * @param statusCode           the status code
+     * @param languageDescriptions the description of the concept per language
+     */
+    public ArtDecorConcept(String conceptId, String artdecorConceptId, String effectiveDate, String valueDomainType, String parent, String statusCode, Map<String, String> languageDescriptions){
         this.conceptId = conceptId;
         this.parent = parent;
         this.artdecorConceptId = artdecorConceptId;
         this.effectiveDate = effectiveDate;
         this.valueDomainType = valueDomainType;
         this.statusCode = statusCode;
+
+        List<LanguageConcept> languageConcepts = new ArrayList<>(languageDescriptions.size());
+        for(Map.Entry<String, String> entry:languageDescriptions.entrySet()){
+            languageConcepts.add(new LanguageConcept(entry.getKey(), entry.getValue()));
+        }
+        languageConcepts.sort((o1, o2) -> o1.language.compareToIgnoreCase(o2.language));
+        this.languageConceptList = Collections.unmodifiableList(languageConcepts);
+        this.fingerprint = createFingerprint(languageConceptList);
     }
 
     /**
@@ -96,14 +117,37 @@ public class ArtDecorConcept {
      */
     void addChild(ArtDecorConcept artDecorConcept){
         children.add(artDecorConcept);
-        type="group";
     }
 
     /**
-     * sort the languageConceptList to make it possible to compare to the languageConceptList of another concept
+     * lets go of the children once the concept has been written, so a concept kept for comparison with later
+     * versions does not keep the rest of its dataset in memory
+     */
+    void releaseChildren(){
+        children.clear();
+    }
+
+    /**
+     * returns the type of the concept: a group if it has children, otherwise an item
+     * @return the type
      */
-    private void sortList(){
-        languageConceptList.sort((o1, o2) -> o1.language.compareToIgnoreCase(o2.language));
+    private String getType(){
+        return children.isEmpty() ? "item" : "group";
+    }
+
+    /**
+     * creates the fingerprint of the descriptions in the languages of a concept
+     * whether a concept is a group depends on the other concepts in its dataset, so it is not part of the fingerprint
+     * @param languageConceptList the descriptions, sorted by language
+     * @return the fingerprint
+     */
+    private static Fingerprint createFingerprint(List<LanguageConcept> languageConceptList){
+        List<String> values = new ArrayList<>(languageConceptList.size()*2);
+        for(LanguageConcept languageConcept:languageConceptList){
+            values.add(languageConcept.language);
+            values.add(languageConcept.description);
+        }
+        return Fingerprint.ofIgnoreCase(values);
     }
 
     /**
@@ -159,23 +203,20 @@ public class ArtDecorConcept {
     }
 
     /**
-     * compare the conceptlist of this concept to the conceptlist of another concept
+     * compare the descriptions of this concept to those of another concept
+     * the fingerprints of the concepts are compared first; only if they match the descriptions themselves are compared
      * @param artDecorConcept concept to compare to
      * @return true/false
      */
     private boolean sameValues(ArtDecorConcept artDecorConcept){
         if(languageConceptList.size()!=artDecorConcept.languageConceptList.size() ||
-                !type.equalsIgnoreCase(artDecorConcept.type)){
+                !fingerprint.equals(artDecorConcept.fingerprint)){
             return false;
         }
 
-        sortList();
-        artDecorConcept.sortList();
-
         for(int i=0; i<languageConceptList.size(); i++){
             LanguageConcept languageConcept1 = languageConceptList.get(i);
             LanguageConcept languageConcept2 = artDecorConcept.languageConceptList.get(i);
-
             if(!languageConcept1.language.equalsIgnoreCase(languageConcept2.language) ||
                !languageConcept1.description.equalsIgnoreCase(languageConcept2.description)){
                 return false;
@@ -184,15 +225,6 @@ public class ArtDecorConcept {
         return true;
     }
 
-    /**
-     * adds a description for the concept in the language
-     * @param language    the language for which to add the description
-     * @param description the description in the language
-     */
-    public void addLanguageConcept(String language, String description){
-        languageConceptList.add(new LanguageConcept(language, description));
-    }
-
     /**
      * set the propertyMap for this concept, which is a Map containing the properties and the values for this concept
      * @param propertyMap the propertyMap
@@ -219,7 +251,7 @@ public class ArtDecorConcept {
 
 
     /**
-     * transform this concept to an xml representation suitable for art-decor
+     * write this concept, including its children, as xml suitable for art-decor
      * this is quite complicated, due to multiple versions of a dataset existing in one file. This leads to
      * full inheritence, new items, new codelists, reuse of existing codelists, etc.
      *
@@ -233,253 +265,272 @@ public class ArtDecorConcept {
      *
      * If it turns out the XML should be different for one of the options, it should now be relatively easy to change...
      *
-     * @return xml representation of the concept, suitable for art-decor
-     */
-    String toXML() throws Exception{
-        StringBuilder stringBuilder = new StringBuilder();
+     * The concept tree is walked with an explicit stack rather than recursion, so deeply nested groups are written
+     * in a single pass without risking a StackOverflowError
+     *
+     * @param writer the writer to which the xml representation of the concept is written
+     * @throws Exception
+     */
+    void writeXML(Writer writer) throws Exception{
+        // each entry holds the children of a concept whose start has been written but whose end tag has not
+        Deque<Iterator<ArtDecorConcept>> stack = new ArrayDeque<>();
+        writeStartXML(writer);
+        stack.push(children.iterator());
+        while(!stack.isEmpty()){
+            Iterator<ArtDecorConcept> childIterator = stack.peek();
+            if(childIterator.hasNext()){
+                ArtDecorConcept artDecorConcept = childIterator.next();
+                artDecorConcept.writeStartXML(writer);
+                stack.push(artDecorConcept.children.iterator());
+            }
+            else{
+                writer.write("</concept>\n");
+                stack.pop();
+            }
+        }
+    }
 
+    /**
+     * write the start tag and the contents of this concept, i.e. everything except its children and the end tag
+     * @param writer the writer
+     * @throws Exception
+     */
+    private void writeStartXML(Writer writer) throws Exception{
         if(!xmlValueDomainTypeStatus.equalsIgnoreCase("CHANGED")) {
 
-            stringBuilder.append("<concept id=\"" + artdecorConceptId + "\" statusCode=\"" + statusCode + "\" effectiveDate=\"" + effectiveDate + "\" type=\"" + type + "\">\n");
+            writer.write("<concept id=\"" + artdecorConceptId + "\" statusCode=\"" + statusCode + "\" effectiveDate=\"" + effectiveDate + "\" type=\"" + getType() + "\">\n");
 
-            if(type.equalsIgnoreCase("group")){
-                addNewHeader(stringBuilder);
+            if(!children.isEmpty()){
+                addNewHeader(writer);
             }
             else{
                 if (valueDomainType.equalsIgnoreCase("code")) {
                     if (xmlConceptTypeStatus.equalsIgnoreCase("NEW") && xmlConceptListTypeStatus.equalsIgnoreCase("NEW")) {
                         logger.log(Level.DEBUG, "{}: New Concept, New options", artdecorConceptId);
-                        newConceptNewOptions(stringBuilder);
+                        newConceptNewOptions(writer);
                     } else if (xmlConceptTypeStatus.equalsIgnoreCase("NEW") && xmlConceptListTypeStatus.equalsIgnoreCase("SAME")) {
                         logger.log(Level.DEBUG, "{}: New Concept, Same options", artdecorConceptId);
-                        newConceptSameOptions(stringBuilder);
+                        newConceptSameOptions(writer);
                     } else if (xmlConceptTypeStatus.equalsIgnoreCase("NEW") && xmlConceptListTypeStatus.equalsIgnoreCase("CHANGED")) {
                         logger.log(Level.DEBUG, "{}: New Concept, Changed options", artdecorConceptId);
-                        newConceptChangedOptions(stringBuilder);
+                        newConceptChangedOptions(writer);
                     } else if (xmlConceptTypeStatus.equalsIgnoreCase("SAME") && xmlConceptListTypeStatus.equalsIgnoreCase("NEW")) {
                         logger.log(Level.DEBUG, "{}: Same Concept, New options", artdecorConceptId);
-                        sameConceptNewOptions(stringBuilder);
+                        sameConceptNewOptions(writer);
                     } else if (xmlConceptTypeStatus.equalsIgnoreCase("SAME") && xmlConceptListTypeStatus.equalsIgnoreCase("SAME")) {
                         logger.log(Level.DEBUG, "{}: Same Concept, Same options", artdecorConceptId);
-                        sameConceptSameOptions(stringBuilder);
+                        sameConceptSameOptions(writer);
                     } else if (xmlConceptTypeStatus.equalsIgnoreCase("SAME") && xmlConceptListTypeStatus.equalsIgnoreCase("CHANGED")) {
                         logger.log(Level.DEBUG, "{}: Same Concept, Changed options", artdecorConceptId);
-                        sameConceptChangedOptions(stringBuilder);
+                        sameConceptChangedOptions(writer);
                     } else if (xmlConceptTypeStatus.equalsIgnoreCase("CHANGED") && xmlConceptListTypeStatus.equalsIgnoreCase("NEW")) {
                         logger.log(Level.DEBUG, "{}: Changed Concept, New options", artdecorConceptId);
-                        changedConceptNewOptions(stringBuilder);
+                        changedConceptNewOptions(writer);
                     } else if (xmlConceptTypeStatus.equalsIgnoreCase("CHANGED") && xmlConceptListTypeStatus.equalsIgnoreCase("SAME")) {
                         logger.log(Level.DEBUG, "{}: Changed Concept, Same options", artdecorConceptId);
-                        changedConceptSameOptions(stringBuilder);
+                        changedConceptSameOptions(writer);
                     } else if (xmlConceptTypeStatus.equalsIgnoreCase("CHANGED") && xmlConceptListTypeStatus.equalsIgnoreCase("CHANGED")) {
                         logger.log(Level.DEBUG, "{}: Changed Concept, Changed options", artdecorConceptId);
-                        changedConceptChangedOptions(stringBuilder);
+                        changedConceptChangedOptions(writer);
                     }
 
                 } else {
                     if (xmlConceptTypeStatus.equalsIgnoreCase("NEW")) {
                         logger.log(Level.DEBUG, "{}: New Concept, No options", artdecorConceptId);
-                        newConceptNoValueDomain(stringBuilder);
+                        newConceptNoValueDomain(writer);
                     } else if (xmlConceptTypeStatus.equalsIgnoreCase("SAME")) {
                         logger.log(Level.DEBUG, "{}: Same Concept, No options", artdecorConceptId);
-                        sameConceptNoValueDomain(stringBuilder);
+                        sameConceptNoValueDomain(writer);
                     } else if (xmlConceptTypeStatus.equalsIgnoreCase("CHANGED")) {
                         logger.log(Level.DEBUG, "{}: Changed Concept, No options", artdecorConceptId);
-                        changedConceptNoValueDomain(stringBuilder);
+                        changedConceptNoValueDomain(writer);
                     }
                 }
             }
-            // add the children
-            for(ArtDecorConcept artDecorConcept:children){
-                stringBuilder.append(artDecorConcept.toXML());
-            }
-
-            stringBuilder.append("</concept>\n");
         }
         else {
             throw new Exception("Fatal Error: The data type was changed, which is not allowed. Please fix. Violating conceptId="+conceptId);
 //            System.err.println("The type was changed! That's an issue");
         }
-        return stringBuilder.toString();
     }
 
     /**
      * new concept and new options
      * create everything
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void newConceptNewOptions(StringBuilder stringBuilder){
-        addNewHeader(stringBuilder);
-        addNewValueDomainCodeList(stringBuilder);
+    private void newConceptNewOptions(Writer writer) throws IOException {
+        addNewHeader(writer);
+        addNewValueDomainCodeList(writer);
     }
 
     /**
      * a new concept will always refer to a new list, so I'd say this is not possible
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void newConceptSameOptions(StringBuilder stringBuilder){
-        addNewHeader(stringBuilder);
-        addNewValueDomainCodeList(stringBuilder);
+    private void newConceptSameOptions(Writer writer) throws IOException {
+        addNewHeader(writer);
+        addNewValueDomainCodeList(writer);
     }
 
     /**
      * a new concept will always refer to a new list, so I'd say this is not possible
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void newConceptChangedOptions(StringBuilder stringBuilder){
-        stringBuilder.append("NOT ALLOWED!");
+    private void newConceptChangedOptions(Writer writer) throws IOException {
+        writer.write("NOT ALLOWED!");
     }
 
 
     /**
      * someone changed the concept from e.g. a string to a code datatype... not allowed I think? Shouldn't happen, as
      * there's a dataype check before this
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void sameConceptNewOptions(StringBuilder stringBuilder){
-        stringBuilder.append("NOT ALLOWED!");
+    private void sameConceptNewOptions(Writer writer) throws IOException {
+        writer.write("NOT ALLOWED!");
     }
 
     /**
      * concept stays the same and options stay the same
      * inherit everything
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void sameConceptSameOptions(StringBuilder stringBuilder){
-        addRefTag(stringBuilder);
+    private void sameConceptSameOptions(Writer writer) throws IOException {
+        addRefTag(writer);
     }
 
     /**
      * concept stayed the some but the options were changed
      * not 100% sure whether we need the SPEC tag, or whether this is only necessary if you change the concept itself
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void sameConceptChangedOptions(StringBuilder stringBuilder){
-        addNewHeader(stringBuilder);
-        addSpecTag(stringBuilder);
-        addNewValueDomainCodeList(stringBuilder);
+    private void sameConceptChangedOptions(Writer writer) throws IOException {
+        addNewHeader(writer);
+        addSpecTag(writer);
+        addNewValueDomainCodeList(writer);
     }
 
     /**
      * someone changed the concept from e.g. a string to a code datatype... not allowed I think?
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void changedConceptNewOptions(StringBuilder stringBuilder){
-        stringBuilder.append("NOT ALLOWED!");
+    private void changedConceptNewOptions(Writer writer) throws IOException {
+        writer.write("NOT ALLOWED!");
     }
 
     /**
      * concept was changed but the options stayed the same
      * keep the relationship with the old concept and refer to the old valuedomain
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void changedConceptSameOptions(StringBuilder stringBuilder){
-        addNewHeader(stringBuilder);
-        addSpecTag(stringBuilder);
-        addRefValueDomainCodeList(stringBuilder);
+    private void changedConceptSameOptions(Writer writer) throws IOException {
+        addNewHeader(writer);
+        addSpecTag(writer);
+        addRefValueDomainCodeList(writer);
     }
 
     /**
      * concept was changed and options were changed
      * keep the relationship with the old concept and create new valuedomain
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void changedConceptChangedOptions(StringBuilder stringBuilder){
-        addNewHeader(stringBuilder);
-        addSpecTag(stringBuilder);
-        addNewValueDomainCodeList(stringBuilder);
+    private void changedConceptChangedOptions(Writer writer) throws IOException {
+        addNewHeader(writer);
+        addSpecTag(writer);
+        addNewValueDomainCodeList(writer);
     }
 
     /**
      * new concept, no codelist
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void newConceptNoValueDomain(StringBuilder stringBuilder){
-        addNewHeader(stringBuilder);
-        addNewValueDomainNoCodelist(stringBuilder);
+    private void newConceptNoValueDomain(Writer writer) throws IOException {
+        addNewHeader(writer);
+        addNewValueDomainNoCodelist(writer);
     }
 
     /**
      * same concept
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void sameConceptNoValueDomain(StringBuilder stringBuilder){
-        addRefTag(stringBuilder);
+    private void sameConceptNoValueDomain(Writer writer) throws IOException {
+        addRefTag(writer);
     }
 
     /**
      * not sure... probably just attach the domain again, since we can't refer to some existing list?
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void changedConceptNoValueDomain(StringBuilder stringBuilder){
-        addNewHeader(stringBuilder);
-        addSpecTag(stringBuilder);
-        addNewValueDomainNoCodelist(stringBuilder);
+    private void changedConceptNoValueDomain(Writer writer) throws IOException {
+        addNewHeader(writer);
+        addSpecTag(writer);
+        addNewValueDomainNoCodelist(writer);
     }
 
     /**
      * adds the actual valueDomain XML tag
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void addNewValueDomainNoCodelist(StringBuilder stringBuilder){
-        stringBuilder.append("<valueDomain type=\""+valueDomainType+"\">\n");
-        stringBuilder.append("</valueDomain>\n");
+    private void addNewValueDomainNoCodelist(Writer writer) throws IOException {
+        writer.write("<valueDomain type=\""+valueDomainType+"\">\n");
+        writer.write("</valueDomain>\n");
     }
 
     /**
      * adds the actual inherit XML tag
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void addRefTag(StringBuilder stringBuilder){
-        stringBuilder.append("<inherit ref=\"" + artdecorConceptId + "\" effectiveDate=\"" + refEffectiveDate + "\"/>\n");
+    private void addRefTag(Writer writer) throws IOException {
+        writer.write("<inherit ref=\"" + artdecorConceptId + "\" effectiveDate=\"" + refEffectiveDate + "\"/>\n");
     }
 
     /**
      * adds the new header XML tags
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void addNewHeader(StringBuilder stringBuilder){
+    private void addNewHeader(Writer writer) throws IOException {
         // name and desc both use the description since we don't have anything better at the moment
         for(LanguageConcept languageConcept:languageConceptList){
-            stringBuilder.append("<name language=\""+ languageConcept.language+"\">"+languageConcept.description+"</name>\n");
+            writer.write("<name language=\""+ languageConcept.language+"\">"+languageConcept.description+"</name>\n");
         }
 
         for(LanguageConcept languageConcept:languageConceptList){
-            stringBuilder.append("<desc language=\""+ languageConcept.language+"\">"+languageConcept.description+"</desc>\n");
+            writer.write("<desc language=\""+ languageConcept.language+"\">"+languageConcept.description+"</desc>\n");
         }
 
         // add properties
         for(Map.Entry property:propertyMap.entrySet()){
-            stringBuilder.append("<property name=\""+property.getKey()+"\">"+property.getValue()+"</property>\n");
+            writer.write("<property name=\""+property.getKey()+"\">"+property.getValue()+"</property>\n");
         }
     }
 
     /**
      * adds the new value domain XML tags
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void addNewValueDomainCodeList(StringBuilder stringBuilder){
-        stringBuilder.append("<valueDomain type=\""+valueDomainType+"\">\n");
-        stringBuilder.append("<conceptList id=\""+artdecorConceptListId+"\"/>\n");
-        stringBuilder.append("</valueDomain>\n");
+    private void addNewValueDomainCodeList(Writer writer) throws IOException {
+        writer.write("<valueDomain type=\""+valueDomainType+"\">\n");
+        writer.write("<conceptList id=\""+artdecorConceptListId+"\"/>\n");
+        writer.write("</valueDomain>\n");
     }
 
     /**
      * adds the reference value domain XML tags
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void addRefValueDomainCodeList(StringBuilder stringBuilder){
-        stringBuilder.append("<valueDomain type=\""+valueDomainType+"\">\n");
-        stringBuilder.append("<conceptList ref=\""+artdecorConceptListId+"\"/>\n");
-        stringBuilder.append("</valueDomain>\n");
+    private void addRefValueDomainCodeList(Writer writer) throws IOException {
+        writer.write("<valueDomain type=\""+valueDomainType+"\">\n");
+        writer.write("<conceptList ref=\""+artdecorConceptListId+"\"/>\n");
+        writer.write("</valueDomain>\n");
     }
 
     /**
      * adds the spec XML tags
-     * @param stringBuilder stringBuilder
+     * @param writer writer
      */
-    private void addSpecTag(StringBuilder stringBuilder){
-        stringBuilder.append("<relationship type=\"SPEC\" ref=\""+artdecorConceptId+"\" flexibility=\""+refEffectiveDate+"\"/>\n");
+    private void addSpecTag(Writer writer) throws IOException {
+        writer.write("<relationship type=\"SPEC\" ref=\""+artdecorConceptId+"\" flexibility=\""+refEffectiveDate+"\"/>\n");
     }
 
     /**
@@ -494,8 +545,8 @@ public class ArtDecorConcept {
      * description of the concept in a language
      */
     private static class LanguageConcept{
-        private String language;
-        private String description;
+        private final String language;
+        private final String description;
 
         LanguageConcept(String language, String description){
             this.description = description;
@@ -21,6 +21,8 @@ package palgacodebooktoxml.artdecor;
 
 import palgacodebooktoxml.settings.Statics;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -92,28 +94,47 @@ public class ArtDecorDataset {
     }
 
     /**
-     * transforms the dataset into XML
-     * @return String representation of the dataset
+     * returns the version of the dataset
+     * @return the version
+     */
+    public double getVersionLabel(){
+        return versionLabel;
+    }
+
+    /**
+     * lets go of the concepts once the dataset has been written
+     * concepts which are still used to compare later versions against are kept by the caller, but no longer hold
+     * on to the rest of the dataset
+     */
+    public void releaseConcepts(){
+        artDecorConcepMap.values().forEach(ArtDecorConcept::releaseChildren);
+        artDecorConcepMap.clear();
+        topArtDecorConceptList.clear();
+    }
+
+    /**
+     * writes the dataset as XML
+     * @param writer the writer to which the dataset is written
      * @throws Exception
      */
-    public String toXML() throws Exception{
+    public void writeXML(Writer writer) throws Exception{
         try {
-            StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("<dataset id=\"" + artdecorDatasetId + "\" effectiveDate=\"" + effectiveDate + "\" statusCode=\"" + statusCode + "\" versionLabel=\"" + versionLabel + "\">\n");
+            writer.write("<dataset id=\"" + artdecorDatasetId + "\" effectiveDate=\"" + effectiveDate + "\" statusCode=\"" + statusCode + "\" versionLabel=\"" + versionLabel + "\">\n");
             for (LanguageDataset languageDataset : languageDatasetList) {
-                stringBuilder.append("<name language=\"" + languageDataset.language + "\">" + languageDataset.datasetName + "</name>\n");
+                writer.write("<name language=\"" + languageDataset.language + "\">" + languageDataset.datasetName + "</name>\n");
             }
 
             for (LanguageDataset languageDataset : languageDatasetList) {
-                stringBuilder.append("<desc language=\"" + languageDataset.language + "\">" + languageDataset.datasetDescription + "</desc>\n");
+                writer.write("<desc language=\"" + languageDataset.language + "\">" + languageDataset.datasetDescription + "</desc>\n");
             }
 
             for (ArtDecorConcept artDecorConcept : topArtDecorConceptList) {
-                stringBuilder.append(artDecorConcept.toXML());
+                artDecorConcept.writeXML(writer);
             }
 
-            stringBuilder.append("</dataset>\n");
-            return stringBuilder.toString();
+            writer.write("</dataset>\n");
+        } catch(IOException e){
+            throw e;
         } catch(Exception e){
             throw new Exception("codebook version: "+versionLabel+"; "+e.getMessage());
         }
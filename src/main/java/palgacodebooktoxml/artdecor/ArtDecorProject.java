@@ -22,6 +22,8 @@ package palgacodebooktoxml.artdecor;
 import palgacodebooktoxml.settings.RunParameters;
 import palgacodebooktoxml.settings.Statics;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Set;
 
 /**
@@ -35,31 +37,30 @@ public class ArtDecorProject {
     }
 
     /**
-     * transforms the project information into XML
-     * @return xml string
+     * writes the project information as XML
+     * @param writer the writer to which the project information is written
+     * @throws IOException
      */
-    public String toXML(){
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("<project id=\""+ runParameters.getProjectId()+"\" prefix=\""+ runParameters.getProjectPrefix()+"\" experimental=\""+ runParameters.getExperimental()+"\" defaultLanguage=\""+ Statics.getArtDecorLanguage(runParameters.getDefaultLanguage())+"\">\n");
+    public void writeXML(Writer writer) throws IOException {
+        writer.write("<project id=\""+ runParameters.getProjectId()+"\" prefix=\""+ runParameters.getProjectPrefix()+"\" experimental=\""+ runParameters.getExperimental()+"\" defaultLanguage=\""+ Statics.getArtDecorLanguage(runParameters.getDefaultLanguage())+"\">\n");
         Set<String> languages = runParameters.getLanguages();
 
         for(String language:languages){
             String languageArtDecor = Statics.getArtDecorLanguage(language);
-            stringBuilder.append("<name language=\""+ languageArtDecor+"\">"+ runParameters.getProjectName(language)+"</name>\n");
+            writer.write("<name language=\""+ languageArtDecor+"\">"+ runParameters.getProjectName(language)+"</name>\n");
         }
 
         for(String language:languages){
             String languageArtDecor = Statics.getArtDecorLanguage(language);
-            stringBuilder.append("<desc language=\""+ languageArtDecor+"\">"+ runParameters.getProjectDescription(language)+"</desc>\n");
+            writer.write("<desc language=\""+ languageArtDecor+"\">"+ runParameters.getProjectDescription(language)+"</desc>\n");
         }
 
         // copyright by and years should probably become parameters as well...
-        stringBuilder.append(
+        writer.write(
                         runParameters.getCopyrightStringFormatted()+"\n"+
                         runParameters.getAuthorsStringFormatted()+"\n"+
                         "<reference url=\"http://decor.nictiz.nl/pub/"+ runParameters.getProjectReference()+"/\"/>\n" +
                         "<defaultElementNamespace ns=\"hl7:\"/>\n" +
                         "</project>\n");
-        return stringBuilder.toString();
     }
 }
@@ -19,6 +19,9 @@
 
 package palgacodebooktoxml.artdecor;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * Links a concept to a codesystem and code via the terminology association tag
  */
@@ -52,10 +55,11 @@ public class ArtDecorTerminologyConcept {
     }
 
     /**
-     * creates the xml representation, linking a concept with its codesystem and code
-     * @return XML string
+     * writes the xml representation, linking a concept with its codesystem and code
+     * @param writer the writer to which the xml is written
+     * @throws IOException
      */
-    public String toXML(){
-        return "<terminologyAssociation conceptId=\""+ artdecorConceptId +"\" conceptFlexibility=\""+conceptFlexibility+"\" code=\""+code+"\" codeSystem=\""+ codeSystemId+"\" codeSystemName=\""+codeSystemName+"\" displayName=\""+displayName+"\" effectiveDate=\""+effectiveDate+"\"/>\n";
+    public void writeXML(Writer writer) throws IOException {
+        writer.write("<terminologyAssociation conceptId=\""+ artdecorConceptId +"\" conceptFlexibility=\""+conceptFlexibility+"\" code=\""+code+"\" codeSystem=\""+ codeSystemId+"\" codeSystemName=\""+codeSystemName+"\" displayName=\""+displayName+"\" effectiveDate=\""+effectiveDate+"\"/>\n");
     }
 }
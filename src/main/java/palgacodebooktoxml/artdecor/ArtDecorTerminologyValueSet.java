@@ -19,6 +19,9 @@
 
 package palgacodebooktoxml.artdecor;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * Links a Concept to its ValueSet in the via the terminology association tag
  */
@@ -43,10 +46,11 @@ public class ArtDecorTerminologyValueSet {
     }
 
     /**
-     * creates the xml representation, linking a concept with its value set
-     * @return
+     * writes the xml representation, linking a concept with its value set
+     * @param writer the writer to which the xml is written
+     * @throws IOException
      */
-    public String toXML(){
-        return "<terminologyAssociation conceptId=\""+artdecorConceptListId+"\" valueSet=\""+artdecorValueSetId+"\" flexibility=\""+flexibilityDate+"\" effectiveDate=\""+effectiveDate+"\"/>\n";
+    public void writeXML(Writer writer) throws IOException {
+        writer.write("<terminologyAssociation conceptId=\""+artdecorConceptListId+"\" valueSet=\""+artdecorValueSetId+"\" flexibility=\""+flexibilityDate+"\" effectiveDate=\""+effectiveDate+"\"/>\n");
     }
 }
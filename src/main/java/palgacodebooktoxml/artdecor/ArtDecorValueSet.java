@@ -22,6 +22,8 @@ package palgacodebooktoxml.artdecor;
 import palgacodebooktoxml.utils.StringUtils;
 import palgacodebooktoxml.settings.Statics;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.*;
 
 /**
@@ -43,6 +45,11 @@ public class ArtDecorValueSet {
 
     private String artdecorValueSetId;
 
+    // the options sorted by code, codesystem and displayName and their fingerprint, used to compare valuesets
+    // both are determined when first needed and are reset when an option is added
+    private List<ConceptOption> sortedConceptOptionList;
+    private Fingerprint fingerprint;
+
     public ArtDecorValueSet(String name, String displayName, String versionLabel, String effectiveDate){
         this.name = StringUtils.removeNonAlphanumericCharacters(name);
         this.displayName = displayName;
@@ -82,6 +89,8 @@ public class ArtDecorValueSet {
         }
         else {
             conceptOptionList.add(conceptOption);
+            sortedConceptOptionList = null;
+            fingerprint = null;
         }
     }
 
@@ -111,28 +120,71 @@ public class ArtDecorValueSet {
     }
 
     /**
-     * sort the conceptOptionsList based on the conceptCodes
+     * returns the version label of the codebook the valueset was created for
+     * @return the version label
+     */
+    public String getVersionLabel(){
+        return versionLabel;
+    }
+
+    /**
+     * returns the number of normal options of the valueset
+     * @return the number of options
+     */
+    public int getConceptOptionCount(){
+        return conceptOptionList.size();
+    }
+
+    /**
+     * returns the options sorted by code, codesystem and displayName, ignoring case, leaving the order of the
+     * options in the valueset as it is
+     * @return the sorted options
+     */
+    private List<ConceptOption> getSortedConceptOptionList(){
+        if(sortedConceptOptionList==null){
+            List<ConceptOption> sortedList = new ArrayList<>(conceptOptionList);
+            sortedList.sort(Comparator.comparing((ConceptOption conceptOption) -> conceptOption.conceptCode, String.CASE_INSENSITIVE_ORDER)
+                    .thenComparing(conceptOption -> conceptOption.conceptCodeSystem, String.CASE_INSENSITIVE_ORDER)
+                    .thenComparing(conceptOption -> conceptOption.displayName, String.CASE_INSENSITIVE_ORDER));
+            sortedConceptOptionList = sortedList;
+        }
+        return sortedConceptOptionList;
+    }
+
+    /**
+     * returns the fingerprint of the code, codesystem and displayName of the options
+     * @return the fingerprint
      */
-    private void sortList(){
-        conceptOptionList.sort((o1, o2) -> o1.conceptCode.compareToIgnoreCase(o2.conceptCode));
+    private Fingerprint getFingerprint(){
+        if(fingerprint==null){
+            List<String> values = new ArrayList<>(conceptOptionList.size()*3);
+            for(ConceptOption conceptOption:getSortedConceptOptionList()){
+                values.add(conceptOption.conceptCode);
+                values.add(conceptOption.conceptCodeSystem);
+                values.add(conceptOption.displayName);
+            }
+            fingerprint = Fingerprint.ofIgnoreCase(values);
+        }
+        return fingerprint;
     }
 
     /**
-     * check whether two ArtDecorValueSets have identical conceptOptionLists
+     * check whether two ArtDecorValueSets have identical conceptOptionLists, ignoring the order of the options
+     * the fingerprints of the valuesets are compared first; only if they match the options themselves are compared
      * @param otherValueSet the ArtDecorValueSet to which to compare the current ArtDecorValueSet
      * @return true/false
      */
     public boolean sameValues(ArtDecorValueSet otherValueSet){
-        if(conceptOptionList.size()!=otherValueSet.conceptOptionList.size())
+        if(conceptOptionList.size()!=otherValueSet.conceptOptionList.size() ||
+                !getFingerprint().equals(otherValueSet.getFingerprint())) {
             return false;
+        }
 
-        // sort the lists by code
-        sortList();
-        otherValueSet.sortList();
-
-        for(int i=0; i<conceptOptionList.size(); i++){
-            ConceptOption conceptOption1 = conceptOptionList.get(i);
-            ConceptOption conceptOption2 = otherValueSet.conceptOptionList.get(i);
+        List<ConceptOption> sortedList = getSortedConceptOptionList();
+        List<ConceptOption> otherSortedList = otherValueSet.getSortedConceptOptionList();
+        for(int i=0; i<sortedList.size(); i++){
+            ConceptOption conceptOption1 = sortedList.get(i);
+            ConceptOption conceptOption2 = otherSortedList.get(i);
             if(!conceptOption1.conceptCode.equalsIgnoreCase(conceptOption2.conceptCode) ||
                !conceptOption1.conceptCodeSystem.equalsIgnoreCase(conceptOption2.conceptCodeSystem) ||
                !conceptOption1.displayName.equalsIgnoreCase(conceptOption2.displayName)){
@@ -143,31 +195,29 @@ public class ArtDecorValueSet {
     }
 
     /**
-     * transform this ArtDecorValueSet into XML
-     * @return String representation of this valueset
+     * write this ArtDecorValueSet as XML
+     * @param writer the writer to which the valueset is written
+     * @throws IOException
      */
-    public String toXML(){
-        StringBuilder stringBuilder = new StringBuilder();
-
-        stringBuilder.append("<valueSet name=\""+name+"_Opts\" displayName=\""+displayName+" Options\" versionLabel=\""+versionLabel+"\" id=\""+artdecorValueSetId+"\" effectiveDate=\""+effectiveDate+"\" statusCode=\""+statusCode+"\">\n");
+    public void writeXML(Writer writer) throws IOException {
+        writer.write("<valueSet name=\""+name+"_Opts\" displayName=\""+displayName+" Options\" versionLabel=\""+versionLabel+"\" id=\""+artdecorValueSetId+"\" effectiveDate=\""+effectiveDate+"\" statusCode=\""+statusCode+"\">\n");
 
         for(LanguageValueSet languageValueSet:languageValueSetList){
-            stringBuilder.append("<desc language=\""+languageValueSet.language+"\">\n");
-            stringBuilder.append(languageValueSet.description+"\n");
-            stringBuilder.append("</desc>\n");
+            writer.write("<desc language=\""+languageValueSet.language+"\">\n");
+            writer.write(languageValueSet.description+"\n");
+            writer.write("</desc>\n");
         }
 
-        stringBuilder.append("<conceptList>\n");
-        for(ConceptOption conceptOption:conceptOptionList){
-            stringBuilder.append(conceptOption.toXML());
+        // the options are written sorted by code, so the output does not depend on the order in which they were added
+        writer.write("<conceptList>\n");
+        for(ConceptOption conceptOption:getSortedConceptOptionList()){
+            conceptOption.writeXML(writer);
         }
         for(ConceptOption conceptOption:exceptionConceptOptionList){
-            stringBuilder.append(conceptOption.toXMLException());
+            conceptOption.writeXMLException(writer);
         }
-        stringBuilder.append("</conceptList>\n");
-        stringBuilder.append("</valueSet>\n");
-
-        return stringBuilder.toString();
+        writer.write("</conceptList>\n");
+        writer.write("</valueSet>\n");
     }
 
     /**
@@ -216,33 +266,31 @@ public class ArtDecorValueSet {
         }
 
         /**
-         * transforms this option into XML
+         * writes this option as XML
          * This is a concept with a designation per language
-         * @return String representation for this option
+         * @param writer the writer to which the option is written
+         * @throws IOException
          */
-        private String toXML(){
-            StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("<concept code=\""+conceptCode+"\" codeSystem=\""+ conceptCodeSystem+"\" codeSystemName=\""+conceptCodeSystemName+"\" displayName=\""+displayName+"\" level=\""+level+"\" type=\""+type+"\">\n");
+        private void writeXML(Writer writer) throws IOException {
+            writer.write("<concept code=\""+conceptCode+"\" codeSystem=\""+ conceptCodeSystem+"\" codeSystemName=\""+conceptCodeSystemName+"\" displayName=\""+displayName+"\" level=\""+level+"\" type=\""+type+"\">\n");
             for(Designation designation:designationList){
-                stringBuilder.append(designation.toXML());
+                designation.writeXML(writer);
             }
-            stringBuilder.append("</concept>\n");
-            return stringBuilder.toString();
+            writer.write("</concept>\n");
         }
 
         /**
-         * transforms this option into XML in case it's an Exception
+         * writes this option as XML in case it's an Exception
          * This is an exception with a designation per language
-         * @return String representation for this option
+         * @param writer the writer to which the option is written
+         * @throws IOException
          */
-        private String toXMLException(){
-            StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("<exception code=\""+conceptCode+"\" codeSystem=\""+ conceptCodeSystem+"\" codeSystemName=\""+conceptCodeSystemName+"\" displayName=\""+displayName+"\" level=\""+level+"\" type=\""+type+"\">\n");
+        private void writeXMLException(Writer writer) throws IOException {
+            writer.write("<exception code=\""+conceptCode+"\" codeSystem=\""+ conceptCodeSystem+"\" codeSystemName=\""+conceptCodeSystemName+"\" displayName=\""+displayName+"\" level=\""+level+"\" type=\""+type+"\">\n");
             for(Designation designation:designationList){
-                stringBuilder.append(designation.toXML());
+                designation.writeXML(writer);
             }
-            stringBuilder.append("</exception>\n");
-            return stringBuilder.toString();
+            writer.write("</exception>\n");
         }
     }
 
@@ -272,8 +320,8 @@ public class ArtDecorValueSet {
             this.language = language;
         }
 
-        private String toXML(){
-            return "<designation language=\""+ Statics.getArtDecorLanguage(language)+"\" type=\""+type+"\" displayName=\""+displayName+"\"/>\n";
+        private void writeXML(Writer writer) throws IOException {
+            writer.write("<designation language=\""+ Statics.getArtDecorLanguage(language)+"\" type=\""+type+"\" displayName=\""+displayName+"\"/>\n");
         }
     }
 
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.artdecor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * 128-bit fingerprint of a list of values, ignoring case
+ * Values which are equal ignoring case (String.equalsIgnoreCase) give the same fingerprint, so two different
+ * fingerprints mean the values differ. Equal fingerprints almost certainly mean the values are equal as well.
+ */
+final class Fingerprint {
+    private final long high;
+    private final long low;
+
+    private Fingerprint(long high, long low){
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * calculates the fingerprint of the values
+     * @param values the values, in a fixed order
+     * @return the fingerprint
+     */
+    static Fingerprint ofIgnoreCase(List<String> values){
+        StringBuilder stringBuilder = new StringBuilder();
+        for(String value:values){
+            // the length keeps e.g. ("ab", "c") and ("a", "bc") apart
+            stringBuilder.append(value.length()).append(':');
+            for(int i=0; i<value.length(); i++){
+                // the same folding as String.equalsIgnoreCase
+                stringBuilder.append(Character.toLowerCase(Character.toUpperCase(value.charAt(i))));
+            }
+        }
+        byte [] digest = getDigest().digest(stringBuilder.toString().getBytes(StandardCharsets.UTF_8));
+        return new Fingerprint(toLong(digest, 0), toLong(digest, 8));
+    }
+
+    /**
+     * returns an MD5 digest, which gives the 128 bits. It is not used for security
+     * @return the digest
+     */
+    private static MessageDigest getDigest(){
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports MD5
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * combines 8 bytes into a long
+     * @param bytes  the bytes
+     * @param offset position of the first byte
+     * @return the long
+     */
+    private static long toLong(byte [] bytes, int offset){
+        long value = 0;
+        for(int i=offset; i<offset+8; i++){
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object object){
+        if(this==object) return true;
+        if(!(object instanceof Fingerprint)) return false;
+        Fingerprint fingerprint = (Fingerprint) object;
+        return high==fingerprint.high && low==fingerprint.low;
+    }
+
+    @Override
+    public int hashCode(){
+        return Long.hashCode(high ^ low);
+    }
+}
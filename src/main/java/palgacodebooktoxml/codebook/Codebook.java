@@ -24,14 +24,13 @@ import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
 import palgacodebooktoxml.settings.RunParameters;
 import palgacodebooktoxml.settings.Statics;
 import palgacodebooktoxml.utils.ExcelUtils;
+import palgacodebooktoxml.utils.SheetHeader;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.text.ParseException;
@@ -43,17 +42,28 @@ import java.util.*;
  */
 class Codebook {
     private static final Logger logger = LogManager.getLogger(Codebook.class.getName());
-    private static final SimpleDateFormat parseFormat = new SimpleDateFormat("yyyy-MM-dd");
-    private static final SimpleDateFormat outFormat = new SimpleDateFormat("yyyy-MM-dd'T'kk:mm:ss");
+    // SimpleDateFormat is not thread-safe and codebooks are read in parallel, so each thread gets its own
+    private static final ThreadLocal<SimpleDateFormat> parseFormat = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd"));
+    private static final ThreadLocal<SimpleDateFormat> outFormat = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd'T'kk:mm:ss"));
     private Date effectiveDateAsDate;
     private String effectiveDate;
+    // false when the effective date was not in the info sheet and today's date was used instead
+    private boolean effectiveDateFromInfo = true;
 
     private String datasetVersionLabel="";
     private final Map<String, CodebookLanguageParameters> codebookLanguageParametersMap = new HashMap<>();
 
     private final RunParameters runParameters;
     private final Map<String, Concept> conceptMap = new LinkedHashMap<>();
-    private List<String> headerList;
+    // codelists which have been read, by codelist_ref; each worksheet is read once
+    private final Map<String, Codelist> codelistMap = new HashMap<>();
+    private ConceptColumns conceptColumns;
+    // the report of the run and the version it is reported under, while the Excel file is parsed
+    private RunReport runReport;
+    private double reportVersion;
+    // the problems found in the Excel file; they are logged when they are added to the problems of the run
+    private final ValidationIssues validationIssues = new ValidationIssues(0);
+    private long rowCount = 0;
 
 
     private Codebook(RunParameters runParameters){
@@ -64,31 +74,74 @@ class Codebook {
      * reads an Excel codebook and turns it into a Codebook object
      * @param path          the Excel codebook file
      * @param runParameters the runparameters
+     * @param runReport     the report of the run, to which the parsing statistics are added
      * @return the newly created codebook
      * @throws IOException
      * @throws InvalidFormatException
      */
-    static Codebook readExcel(Path path, RunParameters runParameters) throws IOException, InvalidFormatException {
+    static Codebook readExcel(Path path, RunParameters runParameters, RunReport runReport) throws IOException, InvalidFormatException {
         Codebook codebook = new Codebook(runParameters);
-        try (Workbook workbook = WorkbookFactory.create(path.toFile())) {
-            parseInfoSheet(codebook, workbook, runParameters);
-            parseMainSheet(codebook, workbook);
+        codebook.runReport = runReport;
+        try (CodebookSheetReader sheetReader = createSheetReader(path, runParameters)) {
+            parseInfoSheet(codebook, sheetReader, runParameters);
+            double version = codebook.getDatasetVersionLabel();
+            codebook.reportVersion = version;
+
+            RunReport.Measurement measurement = runReport.startMeasurement();
+            parseMainSheet(codebook, sheetReader);
+            runReport.addMeasurement(version, "parse main sheet", measurement);
+            runReport.count(version, "rows", codebook.rowCount);
+            runReport.count(version, "concepts", codebook.conceptMap.size());
+            runReport.count(version, "codelists", codebook.codelistMap.size());
+        } finally {
+            codebook.runReport = null;
         }
         return codebook;
     }
 
+    /**
+     * reads only the version from the info sheet of an Excel codebook
+     * @param path          the Excel codebook file
+     * @param runParameters the runparameters
+     * @return the version number
+     * @throws IOException
+     * @throws InvalidFormatException
+     */
+    static double readVersion(Path path, RunParameters runParameters) throws IOException, InvalidFormatException {
+        try (CodebookSheetReader sheetReader = createSheetReader(path, runParameters)) {
+            if(!sheetReader.hasSheet("Info")) throw new RuntimeException("Info sheet missing...");
+            return parseVersionLabel(createValueMap(sheetReader).get("version"));
+        }
+    }
+
+    /**
+     * creates the reader for the Excel codebook. By default the worksheets are streamed; the runparameters can
+     * select the reader which builds the complete workbook instead
+     * @param path          the Excel codebook file
+     * @param runParameters the runparameters
+     * @return the reader
+     * @throws IOException
+     * @throws InvalidFormatException
+     */
+    private static CodebookSheetReader createSheetReader(Path path, RunParameters runParameters) throws IOException, InvalidFormatException {
+        if(runParameters.useStreamingReader()){
+            return new StreamingSheetReader(path);
+        }
+        return new WorkbookSheetReader(path);
+    }
+
     /**
      * parse the info sheet of the Excel file and add the necessary information to the codebook
      * @param codebook      the codebook
-     * @param workbook      the excel codebook
+     * @param sheetReader   the excel codebook
      * @param runParameters the runparamters
+     * @throws IOException
      */
-    private static void parseInfoSheet(Codebook codebook, Workbook workbook, RunParameters runParameters){
-        Sheet sheet = workbook.getSheet("Info");
-        if(sheet==null) throw new RuntimeException("Info sheet missing...");
+    private static void parseInfoSheet(Codebook codebook, CodebookSheetReader sheetReader, RunParameters runParameters) throws IOException {
+        if(!sheetReader.hasSheet("Info")) throw new RuntimeException("Info sheet missing...");
 
         // create a map for the variables and their values from the info sheet
-        Map<String, String> valueMap = createValueMap(sheet);
+        Map<String, String> valueMap = createValueMap(sheetReader);
         codebook.datasetVersionLabel = valueMap.get("version");
         codebook.setEffectiveDate(valueMap);
 
@@ -112,45 +165,63 @@ class Codebook {
      * DatasetName_nl	        PALGA colonbiopt protocol versie 33
      * DatasetDescription_nl	Versie 33 van het PALGA colonbiopt protocol
      * This is turned into a map.
-     * @param sheet the info sheet
+     * @param sheetReader the excel codebook
      * @return a map with the variables in the info sheet and their values
+     * @throws IOException
      */
-    private static Map<String, String> createValueMap(Sheet sheet){
+    private static Map<String, String> createValueMap(CodebookSheetReader sheetReader) throws IOException {
+        ConversionEvents.SheetParseEvent event = new ConversionEvents.SheetParseEvent();
+        event.begin();
+
         Map<String, String> valueMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-        int lastRowNr = sheet.getLastRowNum();
-        for(int i=0; i<=lastRowNr; i++){
-            Row row = sheet.getRow(i);
-            // if the row exists, add the information in the row to our excelCodebook
-            if(row!=null) {
-                String key = ExcelUtils.getCellValue(row, 0);
-                String value = ExcelUtils.getCellValue(row, 1);
-                valueMap.put(key, value);
-            }
+        sheetReader.readSheet("Info", (rowNumber, values) -> {
+            String key = values.size()>0 ? values.get(0) : "";
+            String value = values.size()>1 ? values.get(1) : "";
+            valueMap.put(key, value);
+        });
+
+        event.end();
+        if(event.shouldCommit()){
+            event.sheet = "Info";
+            event.versionLabel = valueMap.get("version");
+            event.rows = valueMap.size();
+            event.commit();
         }
         return valueMap;
     }
 
     /**
      * parse the main sheet
-     * @param codebook the codebook
-     * @param workbook the Excel codebook
+     * @param codebook    the codebook
+     * @param sheetReader the Excel codebook
+     * @throws IOException
      */
-    private static void parseMainSheet(Codebook codebook, Workbook workbook){
-        // head to the main sheet of the codebook
-        Sheet sheet = workbook.getSheet("Codebook");
-
-        // first row contains the header.
-        Row row = sheet.getRow(0);
-        codebook.addHeader(row);
-
-        // iterate over the rest of the rows
-        int lastRowNr = sheet.getLastRowNum();
-        for(int i=1; i<=lastRowNr; i++){
-            row = sheet.getRow(i);
-            // if the row exists, add the information in the row to our excelCodebook
-            if (row != null && !ExcelUtils.isEmptyRow(row)) {
-                codebook.addData(workbook, row);
+    private static void parseMainSheet(Codebook codebook, CodebookSheetReader sheetReader) throws IOException {
+        if(!sheetReader.hasSheet("Codebook")) throw new RuntimeException("Codebook sheet missing...");
+        ConversionEvents.SheetParseEvent event = new ConversionEvents.SheetParseEvent();
+        event.begin();
+
+        sheetReader.readSheet("Codebook", (rowNumber, values) -> {
+            // first row contains the header.
+            if(rowNumber==0){
+                codebook.addHeader(values);
+            }
+            // empty rows are skipped, so without a header on the first row the columns are unknown
+            else if(codebook.conceptColumns==null){
+                throw new IOException("codebook version: "+codebook.datasetVersionLabel+"; the first row of the Codebook sheet is empty, it should contain the header");
+            }
+            else {
+                codebook.rowCount++;
+                codebook.addData(sheetReader, values, rowNumber);
             }
+        });
+
+        event.end();
+        if(event.shouldCommit()){
+            event.sheet = "Codebook";
+            event.versionLabel = codebook.datasetVersionLabel;
+            event.rows = codebook.rowCount;
+            event.commit();
         }
     }
 
@@ -161,23 +232,24 @@ class Codebook {
     private void setEffectiveDate(Map<String, String> valueMap){
         if(valueMap.containsKey("effectiveDate")) {
             try {
-                effectiveDateAsDate = parseFormat.parse(valueMap.get("effectivedate"));
-                effectiveDate = outFormat.format(effectiveDateAsDate);
+                effectiveDateAsDate = parseFormat.get().parse(valueMap.get("effectivedate"));
+                effectiveDate = outFormat.get().format(effectiveDateAsDate);
 
             } catch (ParseException e) {
-                logger.log(Level.ERROR, "codebook version: {}; Severe Error: The effective date is not in the correct format {}", datasetVersionLabel, valueMap.get("effectivedate"));
+                validationIssues.report(ValidationIssues.Rule.EFFECTIVE_DATE_FORMAT, datasetVersionLabel, "Info", -1, "effectivedate", "", valueMap.get("effectivedate"));
                 try{
-                    effectiveDateAsDate = parseFormat.parse("1900-01-01");
-                    effectiveDate = outFormat.format(effectiveDateAsDate);
+                    effectiveDateAsDate = parseFormat.get().parse("1900-01-01");
+                    effectiveDate = outFormat.get().format(effectiveDateAsDate);
                 } catch (ParseException e1) {
                     e1.printStackTrace();
                 }
             }
         }
         else{
-            logger.log(Level.WARN, "codebook version: {}; Warning: The Effectivedate is not available in the INFO sheet (yyyy-mm-dd). Setting it to today... ", datasetVersionLabel);
+            validationIssues.report(ValidationIssues.Rule.EFFECTIVE_DATE_MISSING, datasetVersionLabel, "Info", -1, "effectivedate", "");
             effectiveDateAsDate = new Date();
-            effectiveDate = outFormat.format(effectiveDateAsDate);
+            effectiveDate = outFormat.get().format(effectiveDateAsDate);
+            effectiveDateFromInfo = false;
         }
     }
 
@@ -201,11 +273,13 @@ class Codebook {
     }
 
     /**
-     * store the header of the Excel's codebook
-     * @param row row containing the header
+     * store the header of the Excel's codebook, resolving the columns we need
+     * @param values values of the row containing the header
      */
-    private void addHeader(Row row){
-        headerList = ExcelUtils.getRowAsList(row);
+    private void addHeader(List<String> values){
+        SheetHeader sheetHeader = new SheetHeader("Codebook", values);
+        conceptColumns = new ConceptColumns(sheetHeader, runParameters.getLanguages());
+        validationIssues.reportMissingColumns(sheetHeader, datasetVersionLabel);
     }
 
     /**
@@ -214,27 +288,28 @@ class Codebook {
      * @param codesystem       the concept's codesystem
      * @param code             the concept's code
      * @param description_code the concept's code description
+     * @param row              the row of the concept, as shown in Excel
      * @return true/false
      */
-    private boolean isValidEntry(String id, String codesystem, String code, String description_code){
+    private boolean isValidEntry(String id, String codesystem, String code, String description_code, int row){
         boolean isValid=true;
         if(conceptMap.containsKey(id)){
-            logger.log(Level.ERROR, "codebook version: {}; Concept: The identifier in the codebook must be unique {}", datasetVersionLabel, id);
+            validationIssues.report(ValidationIssues.Rule.DUPLICATE_CONCEPT_ID, datasetVersionLabel, "Codebook", row, "id", id, id);
             isValid = false;
         }
         if(Statics.mayBeTypo(codesystem)){
-            logger.log(Level.WARN, "codebook version: {}; Concept: Codesystem found: {} for {}. Did you mean {}?", datasetVersionLabel, codesystem, id, Statics.getTypoValue(codesystem));
+            validationIssues.report(ValidationIssues.Rule.CONCEPT_CODESYSTEM_TYPO, datasetVersionLabel, "Codebook", row, "codesystem", id, codesystem, id, Statics.getTypoValue(codesystem));
         }
         if(code.equalsIgnoreCase("")){
-            logger.log(Level.ERROR, "codebook version: {}; Concept: Mandatory code missing for concept {}", datasetVersionLabel, id);
+            validationIssues.report(ValidationIssues.Rule.CONCEPT_CODE_MISSING, datasetVersionLabel, "Codebook", row, "code", id, id);
             isValid = false;
         }
         if(codesystem.equalsIgnoreCase("")){
-            logger.log(Level.ERROR, "codebook version: {}; Concept: Mandatory codesystem missing for concept {}", datasetVersionLabel, id);
+            validationIssues.report(ValidationIssues.Rule.CONCEPT_CODESYSTEM_MISSING, datasetVersionLabel, "Codebook", row, "codesystem", id, id);
             isValid = false;
         }
         if(description_code.equalsIgnoreCase("")){
-            logger.log(Level.ERROR, "codebook version: {}; Concept: Mandatory code description missing for concept {}", datasetVersionLabel, id);
+            validationIssues.report(ValidationIssues.Rule.CONCEPT_DESCRIPTION_MISSING, datasetVersionLabel, "Codebook", row, "description_code", id, id);
             isValid = false;
         }
         return isValid;
@@ -242,67 +317,71 @@ class Codebook {
 
     /**
      * create a codebook item for the row
-     * @param workbook the Excel codebook
-     * @param row      the row we're looking at
+     * @param sheetReader the Excel codebook
+     * @param values      the values of the row we're looking at
+     * @param rowNumber   the row in the worksheet
+     * @throws IOException
      */
-    private void addData(Workbook workbook, Row row){
-        String id = ExcelUtils.getValue(row, "id", headerList);
-        String codesystem = ExcelUtils.getValue(row, "codesystem", headerList);
-        String code = ExcelUtils.getValue(row, "code", headerList);
-        String description_code = ExcelUtils.getValue(row, "description_code", headerList);
-        String codelist_ref = ExcelUtils.getValue(row, "codelist_ref", headerList);
-        String properties =  ExcelUtils.getValue(row, "properties", headerList);
-        String parent = ExcelUtils.getValue(row, "parent", headerList);
-        String data_type = ExcelUtils.getValue(row, "data_type", headerList);
+    private void addData(CodebookSheetReader sheetReader, List<String> values, int rowNumber) throws IOException {
+        String id = ExcelUtils.getValue(values, conceptColumns.id);
+        String codesystem = ExcelUtils.getValue(values, conceptColumns.codesystem);
+        String code = ExcelUtils.getValue(values, conceptColumns.code);
+        String description_code = ExcelUtils.getValue(values, conceptColumns.description_code);
+        String codelist_ref = ExcelUtils.getValue(values, conceptColumns.codelist_ref);
+        String properties =  ExcelUtils.getValue(values, conceptColumns.properties);
+        String parent = ExcelUtils.getValue(values, conceptColumns.parent);
+        String data_type = ExcelUtils.getValue(values, conceptColumns.data_type);
 
         // If the concept itself is invalid, we basically stop for this entry. This also implies that any errors made
         // in the concept's codelist will not be shown until the concept itself is fixed.
-        if(isValidEntry(id, codesystem, code, description_code)) {
+        if(isValidEntry(id, codesystem, code, description_code, rowNumber+1)) {
             Concept concept = new Concept(id, codesystem, code, description_code, properties, codelist_ref, parent, data_type, effectiveDate, datasetVersionLabel, runParameters.getStatusCode());
 
             // get the description in the available languages
-            Set<String> languages = runParameters.getLanguages();
-            for (String language : languages) {
-                String languageDescription = ExcelUtils.getValue(row, "description_" + language, headerList);
-                concept.addLanguageConcept(language, languageDescription);
+            for (int i = 0; i < conceptColumns.languages.length; i++) {
+                String languageDescription = ExcelUtils.getValue(values, conceptColumns.description[i]);
+                concept.addLanguageConcept(conceptColumns.languages[i], languageDescription);
             }
 
             conceptMap.put(id, concept);
 
             // if the codebook item has a codelist add it as well
             if (!codelist_ref.equalsIgnoreCase("")) {
-                addCodeList(workbook, concept, codelist_ref);
+                addCodeList(sheetReader, concept, codelist_ref);
             }
         }
     }
 
     /**
-     * add a codelist to the concept
-     * @param workbook     the Excel codebook
+     * add a codelist to the concept. The codelist worksheet is read the first time it is referenced; concepts
+     * referring to the same worksheet share the codelist
+     * @param sheetReader  the Excel codebook
      * @param concept      the concept
      * @param codelist_ref the codelist reference we're looking for
+     * @throws IOException
      */
-    private void addCodeList(Workbook workbook, Concept concept, String codelist_ref) {
-        try {
-            Sheet sheet = workbook.getSheet(codelist_ref);
-
-            // retrieve the header of the sheet
-            Row row = sheet.getRow(0);
-            List<String> codelistHeaderList = ExcelUtils.getRowAsList(row);
-
-            // parse the remaining rows
-            int lastRowNr = sheet.getLastRowNum();
-            for (int i = 1; i <= lastRowNr; i++) {
-                row = sheet.getRow(i);
-                // if the row exists, add the information in the row to our excelCodebook
-                if (row != null && !ExcelUtils.isEmptyRow(row)) {
-                    concept.addCodeListEntry(row, codelistHeaderList, runParameters.getLanguages(), codelist_ref);
-//                    addCodeListEntry(concept, row, codelistHeaderList);
-                }
+    private void addCodeList(CodebookSheetReader sheetReader, Concept concept, String codelist_ref) throws IOException {
+        Codelist codelist = codelistMap.get(codelist_ref);
+        if(codelist==null){
+            // the codelists are read while the main sheet is parsed, so this time is also part of parsing the main sheet
+            RunReport.Measurement measurement = runReport.startMeasurement();
+            ConversionEvents.CodelistParseEvent event = new ConversionEvents.CodelistParseEvent();
+            event.begin();
+
+            codelist = Codelist.readCodelist(sheetReader, codelist_ref, runParameters.getLanguages(), datasetVersionLabel, validationIssues);
+            codelistMap.put(codelist_ref, codelist);
+
+            event.end();
+            if(event.shouldCommit()){
+                event.codelist = codelist_ref;
+                event.versionLabel = datasetVersionLabel;
+                event.conceptId = concept.getId();
+                event.options = codelist.getConceptOptions().size();
+                event.commit();
             }
-        } catch (NullPointerException e){
-            logger.log(Level.ERROR, "codebook version: {}; Severe Error: Issue adding codelist, ref = {}", datasetVersionLabel, codelist_ref);
+            runReport.addMeasurement(reportVersion, "parse codelists", measurement);
         }
+        concept.setCodelist(codelist);
     }
 
     /**
@@ -318,6 +397,15 @@ class Codebook {
 //        }
 //    }
     double getDatasetVersionLabel() {
+        return parseVersionLabel(datasetVersionLabel);
+    }
+
+    /**
+     * turns a version label into a version number
+     * @param datasetVersionLabel the version label from the info sheet
+     * @return the version number
+     */
+    private static double parseVersionLabel(String datasetVersionLabel) {
         try {
             return Double.parseDouble(datasetVersionLabel);
         } catch (Exception e){
@@ -348,6 +436,95 @@ class Codebook {
         return effectiveDateAsDate;
     }
 
+    /**
+     * returns whether the codebook may be stored in the codebook cache. This is not the case if today's date was
+     * used as effective date, as that date would be remembered
+     * @return true/false
+     */
+    boolean isCacheable(){
+        return effectiveDateFromInfo;
+    }
+
+    /**
+     * returns the problems found in the Excel file of the codebook
+     * @return the problems
+     */
+    ValidationIssues getValidationIssues(){
+        return validationIssues;
+    }
+
+    /**
+     * writes the codebook in the binary form used by the codebook cache
+     * @param dataOutputStream the stream
+     * @throws IOException
+     */
+    void writeTo(DataOutputStream dataOutputStream) throws IOException {
+        CodebookCache.writeString(dataOutputStream, datasetVersionLabel);
+        dataOutputStream.writeLong(effectiveDateAsDate.getTime());
+        CodebookCache.writeString(dataOutputStream, effectiveDate);
+
+        dataOutputStream.writeInt(codebookLanguageParametersMap.size());
+        for(Map.Entry<String, CodebookLanguageParameters> entrySet:codebookLanguageParametersMap.entrySet()){
+            CodebookCache.writeString(dataOutputStream, entrySet.getKey());
+            CodebookCache.writeString(dataOutputStream, entrySet.getValue().datasetDescription);
+            CodebookCache.writeString(dataOutputStream, entrySet.getValue().datasetName);
+        }
+
+        // codelists are written once and referred to by their position, so concepts keep sharing them
+        Map<Codelist, Integer> codelistIndexMap = new IdentityHashMap<>();
+        dataOutputStream.writeInt(codelistMap.size());
+        for(Map.Entry<String, Codelist> entrySet:codelistMap.entrySet()){
+            codelistIndexMap.put(entrySet.getValue(), codelistIndexMap.size());
+            CodebookCache.writeString(dataOutputStream, entrySet.getKey());
+            entrySet.getValue().writeTo(dataOutputStream);
+        }
+
+        dataOutputStream.writeInt(conceptMap.size());
+        for(Concept concept:conceptMap.values()){
+            concept.writeTo(dataOutputStream, codelistIndexMap);
+        }
+        validationIssues.writeTo(dataOutputStream);
+    }
+
+    /**
+     * reads a codebook written by writeTo
+     * @param dataInputStream the stream
+     * @param runParameters   the runparameters
+     * @return the codebook
+     * @throws IOException
+     */
+    static Codebook readFrom(DataInputStream dataInputStream, RunParameters runParameters) throws IOException {
+        Codebook codebook = new Codebook(runParameters);
+        codebook.datasetVersionLabel = CodebookCache.readString(dataInputStream);
+        codebook.effectiveDateAsDate = new Date(dataInputStream.readLong());
+        codebook.effectiveDate = CodebookCache.readString(dataInputStream);
+
+        int languageCount = dataInputStream.readInt();
+        for(int i=0; i<languageCount; i++){
+            String language = CodebookCache.readString(dataInputStream);
+            String datasetDescription = CodebookCache.readString(dataInputStream);
+            String datasetName = CodebookCache.readString(dataInputStream);
+            codebook.addLanguageSetting(language, datasetDescription, datasetName);
+        }
+
+        int codelistCount = dataInputStream.readInt();
+        List<Codelist> codelistList = new ArrayList<>(codelistCount);
+        for(int i=0; i<codelistCount; i++){
+            String codelist_ref = CodebookCache.readString(dataInputStream);
+            Codelist codelist = Codelist.readFrom(dataInputStream);
+            codebook.codelistMap.put(codelist_ref, codelist);
+            codelistList.add(codelist);
+        }
+
+        int conceptCount = dataInputStream.readInt();
+        for(int i=0; i<conceptCount; i++){
+            Concept concept = Concept.readFrom(dataInputStream, codelistList, codebook.effectiveDate, codebook.datasetVersionLabel, runParameters.getStatusCode());
+            codebook.conceptMap.put(concept.getId(), concept);
+        }
+        codebook.validationIssues.readFrom(dataInputStream);
+        return codebook;
+    }
+
     private class CodebookLanguageParameters{
         private String datasetDescription="";
         private String datasetName="";
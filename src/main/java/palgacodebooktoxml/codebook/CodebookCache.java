@@ -0,0 +1,291 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import palgacodebooktoxml.settings.RunParameters;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * On-disk cache of parsed codebooks, which prevents unchanged Excel files from being parsed again in every run
+ *
+ * Each Excel file has one entry, named after a hash of its path. The entry starts with a header containing the
+ * file's size, modification time and content hash, the settings which influence parsing (status code and
+ * languages) and the version of the codebook, followed by the codebook in a compact binary form, including the
+ * problems found while parsing it. The version can be looked up without reading the codebook.
+ * An entry is used when the settings match and either the size and modification time match, or the size and
+ * content hash match (e.g. the file was copied or saved without changes).
+ */
+class CodebookCache {
+    private static final Logger logger = LogManager.getLogger(CodebookCache.class.getName());
+
+    // increase when the binary form of the codebook changes, so older entries are no longer used
+    private static final int FORMAT_VERSION = 5;
+    private static final String ENTRY_SUFFIX = ".codebook";
+
+    private final Path cacheDirectory;
+    private final String settingsKey;
+
+    /**
+     * creates the cache for a run
+     * @param runParameters the runparameters, which specify the cache directory
+     */
+    CodebookCache(RunParameters runParameters){
+        this.cacheDirectory = Paths.get(runParameters.getCodebookCacheDirectory());
+        this.settingsKey = runParameters.getStatusCode()+";"+String.join(",", new TreeSet<>(runParameters.getLanguages()));
+    }
+
+    /**
+     * removes all entries from the cache
+     * @throws IOException
+     */
+    void clear() throws IOException {
+        if(!Files.isDirectory(cacheDirectory)){
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDirectory, "*"+ENTRY_SUFFIX)) {
+            for (Path entry : stream) {
+                Files.deleteIfExists(entry);
+            }
+        }
+        logger.log(Level.INFO, "Codebook cache cleared");
+    }
+
+    /**
+     * retrieves the version of the codebook for an Excel file from the cache, without reading the codebook itself
+     * @param file the Excel codebook file
+     * @return the version, or null if there is no valid entry for the file
+     */
+    Double loadVersion(Path file){
+        Path entry = getEntryPath(file);
+        if(!Files.isRegularFile(entry)){
+            return null;
+        }
+        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            return readHeader(dataInputStream, file) ? dataInputStream.readDouble() : null;
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Unable to use cached codebook for {}, reading the Excel file instead: {}", file.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * retrieves the codebook for an Excel file from the cache
+     * @param file          the Excel codebook file
+     * @param runParameters the runparameters
+     * @return the codebook, or null if there is no valid entry for the file
+     */
+    Codebook load(Path file, RunParameters runParameters){
+        Path entry = getEntryPath(file);
+        if(!Files.isRegularFile(entry)){
+            return null;
+        }
+        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            if(!readHeader(dataInputStream, file)){
+                return null;
+            }
+            // the version is part of the codebook as well
+            dataInputStream.readDouble();
+            return Codebook.readFrom(dataInputStream, runParameters);
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Unable to use cached codebook for {}, reading the Excel file instead: {}", file.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * reads the header of an entry, up to the version, and checks whether the entry can be used for the Excel file
+     * @param dataInputStream the entry
+     * @param file            the Excel codebook file
+     * @return true if the entry was made for the current content of the file with the current settings
+     * @throws IOException
+     */
+    private boolean readHeader(DataInputStream dataInputStream, Path file) throws IOException {
+        if(dataInputStream.readInt()!=FORMAT_VERSION || !settingsKey.equals(readString(dataInputStream))){
+            return false;
+        }
+        long size = dataInputStream.readLong();
+        long lastModified = dataInputStream.readLong();
+        String contentHash = readString(dataInputStream);
+
+        if(size!=Files.size(file)){
+            return false;
+        }
+        // when the modification time differs, check whether the content actually changed
+        return lastModified==Files.getLastModifiedTime(file).toMillis() || contentHash.equals(getContentHash(file));
+    }
+
+    /**
+     * stores the codebook for an Excel file in the cache
+     * a codebook which could not be stored is simply read from the Excel file again in the next run
+     * @param file     the Excel codebook file
+     * @param codebook the codebook read from the file
+     */
+    void store(Path file, Codebook codebook){
+        // a codebook without an effective date gets today's date, which should not be remembered
+        if(!codebook.isCacheable()){
+            return;
+        }
+        Path entry = getEntryPath(file);
+        Path tempFile = null;
+        try {
+            Files.createDirectories(cacheDirectory);
+            tempFile = Files.createTempFile(cacheDirectory, "entry", ".tmp");
+            try (DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                dataOutputStream.writeInt(FORMAT_VERSION);
+                writeString(dataOutputStream, settingsKey);
+                dataOutputStream.writeLong(Files.size(file));
+                dataOutputStream.writeLong(Files.getLastModifiedTime(file).toMillis());
+                writeString(dataOutputStream, getContentHash(file));
+                dataOutputStream.writeDouble(codebook.getDatasetVersionLabel());
+                codebook.writeTo(dataOutputStream);
+            }
+            // replace the entry in one step, so a concurrent or interrupted run never sees half an entry
+            Files.move(tempFile, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Unable to cache codebook {}: {}", file.getFileName(), e.getMessage());
+            deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * returns the location of the cache entry for an Excel file
+     * @param file the Excel codebook file
+     * @return the path of the entry
+     */
+    private Path getEntryPath(Path file){
+        String path = file.toAbsolutePath().normalize().toString();
+        return cacheDirectory.resolve(toHex(getDigest().digest(path.getBytes(StandardCharsets.UTF_8)))+ENTRY_SUFFIX);
+    }
+
+    /**
+     * calculates the SHA-256 hash of a file's content
+     * @param file the file
+     * @return hex representation of the hash
+     * @throws IOException
+     */
+    private static String getContentHash(Path file) throws IOException {
+        MessageDigest messageDigest = getDigest();
+        byte [] buffer = new byte[64*1024];
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            int read;
+            while((read = inputStream.read(buffer))!=-1){
+                messageDigest.update(buffer, 0, read);
+            }
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    private static MessageDigest getDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte [] bytes){
+        StringBuilder stringBuilder = new StringBuilder(bytes.length*2);
+        for(byte b:bytes){
+            stringBuilder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return stringBuilder.toString();
+    }
+
+    private static void deleteQuietly(Path path){
+        if(path!=null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.log(Level.DEBUG, "Unable to remove {}", path);
+            }
+        }
+    }
+
+    /**
+     * writes a string, which may be null, as its length followed by its UTF-8 bytes
+     * (DataOutputStream.writeUTF is limited to 64KB)
+     * @param dataOutputStream the stream
+     * @param value            the string
+     * @throws IOException
+     */
+    static void writeString(DataOutputStream dataOutputStream, String value) throws IOException {
+        if(value==null){
+            dataOutputStream.writeInt(-1);
+            return;
+        }
+        byte [] bytes = value.getBytes(StandardCharsets.UTF_8);
+        dataOutputStream.writeInt(bytes.length);
+        dataOutputStream.write(bytes);
+    }
+
+    /**
+     * reads a string written by writeString
+     * @param dataInputStream the stream
+     * @return the string, which may be null
+     * @throws IOException
+     */
+    static String readString(DataInputStream dataInputStream) throws IOException {
+        int length = dataInputStream.readInt();
+        if(length==-1){
+            return null;
+        }
+        byte [] bytes = new byte[length];
+        dataInputStream.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * writes a map of strings
+     * @param dataOutputStream the stream
+     * @param map              the map
+     * @throws IOException
+     */
+    static void writeStringMap(DataOutputStream dataOutputStream, Map<String, String> map) throws IOException {
+        dataOutputStream.writeInt(map.size());
+        for(Map.Entry<String, String> entry:map.entrySet()){
+            writeString(dataOutputStream, entry.getKey());
+            writeString(dataOutputStream, entry.getValue());
+        }
+    }
+
+    /**
+     * reads a map of strings written by writeStringMap into a map
+     * @param dataInputStream the stream
+     * @param map             the map to add the entries to
+     * @throws IOException
+     */
+    static void readStringMap(DataInputStream dataInputStream, Map<String, String> map) throws IOException {
+        int size = dataInputStream.readInt();
+        for(int i=0; i<size; i++){
+            String key = readString(dataInputStream);
+            map.put(key, readString(dataInputStream));
+        }
+    }
+}
@@ -28,74 +28,259 @@ import palgacodebooktoxml.settings.RunParameters;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Codebook manager
- * builds the codebooks and provides access to them
+ * finds the codebooks and provides access to them
+ *
+ * The codebooks are not all kept in memory. When the manager is created only the version of each codebook is
+ * determined; a codebook is read completely when it is requested, while the next versions are read ahead in the
+ * background, and it is up to the caller to let go of it once it has been processed.
+ *
+ * With the codebook cache, the version of an unchanged codebook is taken from its cache entry. A codebook which is
+ * not in the cache is parsed completely while the versions are determined and stored in the cache, so its Excel file
+ * is opened once and the codebook is taken from the cache when it is requested. Without the cache only the info
+ * sheet is read up front, and the file is opened again when the codebook is requested.
  */
 public class CodebookManager {
     private static final Logger logger = LogManager.getLogger(CodebookManager.class.getName());
-//    private Map<Integer, Codebook> codebookMap = new TreeMap<>();
-    private final Map<Double, Codebook> codebookMap = new TreeMap<>();
+    // how long an idle reader thread is kept, so no explicit shutdown is needed
+    private static final long READER_KEEP_ALIVE_SECONDS = 10;
+
+    private final RunParameters runParameters;
+    private final CodebookCache codebookCache;
+    private final RunReport runReport = new RunReport();
+    private final ValidationIssues validationIssues;
+    private final ExecutorService executorService;
+    // the number of codebooks being read at the same time, including the one requested
+    private final int readAhead;
+    // the files parsed while the versions were determined
+    private final Set<Path> parsedFiles = ConcurrentHashMap.newKeySet();
+
+    // the Excel file of each version
+    private final NavigableMap<Double, Path> codebookFileMap = new TreeMap<>();
+    // the versions which are being read, or have been read but were not requested yet
+    private final Map<Double, Future<Codebook>> codebookReadMap = new HashMap<>();
 
-    private CodebookManager(){}
+    private CodebookManager(RunParameters runParameters, CodebookCache codebookCache, int readerThreads){
+        this.runParameters = runParameters;
+        this.codebookCache = codebookCache;
+        this.readAhead = runParameters.getReadAhead();
+        this.validationIssues = new ValidationIssues(runParameters.getValidationLogLimit());
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(readerThreads, readerThreads,
+                READER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "codebook-reader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        this.executorService = threadPoolExecutor;
+    }
 
     /**
-     * read the excel codebooks found in a directory (specifief in the runparameters)
+     * find the excel codebooks in a directory (specifief in the runparameters) and determine their versions
+     * the versions are determined in parallel; the number of threads is set in the runparameters
+     * the codebooks themselves are read by getCodebook
      * @param runParameters    parameters used for this run
      * @return the codebookmanager which can be used to access the codebooks
      * @throws IOException
      * @throws InvalidFormatException
      */
     public static CodebookManager readCodebooks(RunParameters runParameters) throws IOException, InvalidFormatException {
-        CodebookManager codebookManager = new CodebookManager();
-        String codebookDirectory = runParameters.getCodebookDirectory();
+        List<Path> codebookFiles = getCodebookFiles(runParameters.getCodebookDirectory());
+        CodebookCache codebookCache = null;
+        if(runParameters.useCodebookCache()){
+            codebookCache = new CodebookCache(runParameters);
+            if(runParameters.clearCodebookCache()){
+                codebookCache.clear();
+            }
+        }
+
+        CodebookManager codebookManager = new CodebookManager(runParameters, codebookCache, Math.min(runParameters.getReaderThreads(), Math.max(1, codebookFiles.size())));
+        List<Future<Double>> futureList = new ArrayList<>();
+        for (Path file : codebookFiles) {
+            futureList.add(codebookManager.executorService.submit(() -> {
+                RunReport.Measurement measurement = codebookManager.runReport.startMeasurement();
+                double version = codebookManager.readVersion(file);
+                codebookManager.runReport.addMeasurement("read versions", measurement);
+                return version;
+            }));
+        }
+
+        // add the files in the order of the files rather than the order in which they finished, so the
+        // outcome does not depend on timing (e.g. which codebook wins if two files have the same version)
+        for (int i=0; i<codebookFiles.size(); i++) {
+            codebookManager.codebookFileMap.put(getResult(futureList.get(i)), codebookFiles.get(i));
+        }
+        return codebookManager;
+    }
+
+    /**
+     * determines the version of a codebook
+     * the version of an unchanged codebook is taken from the cache; a codebook which is not in the cache is parsed
+     * and stored in the cache, and without the cache only the info sheet is read
+     * @param file the Excel codebook file
+     * @return the version
+     * @throws IOException
+     * @throws InvalidFormatException
+     */
+    private double readVersion(Path file) throws IOException, InvalidFormatException {
+        if(codebookCache==null){
+            return Codebook.readVersion(file, runParameters);
+        }
+        Double version = codebookCache.loadVersion(file);
+        if(version!=null){
+            return version;
+        }
+
+        // a codebook without an effective date is not stored, so it is parsed again when it is requested and only the
+        // problems of that parse are reported
+        logger.log(Level.INFO, "Reading codebook: {}", file.getFileName());
+        Codebook codebook = Codebook.readExcel(file, runParameters, runReport);
+        codebookCache.store(file, codebook);
+        parsedFiles.add(file);
+        return codebook.getDatasetVersionLabel();
+    }
+
+    /**
+     * reads a single codebook, from the cache if the Excel file has not changed since it was cached
+     * @param file the Excel codebook file
+     * @return the codebook
+     * @throws IOException
+     * @throws InvalidFormatException
+     */
+    private Codebook readCodebook(Path file) throws IOException, InvalidFormatException {
+        RunReport.Measurement measurement = runReport.startMeasurement();
+        ConversionEvents.CodebookReadEvent event = new ConversionEvents.CodebookReadEvent();
+        event.begin();
+
+        Codebook codebook = null;
+        if(codebookCache!=null){
+            codebook = codebookCache.load(file, runParameters);
+            if(codebook!=null){
+                if(parsedFiles.contains(file)){
+                    logger.log(Level.DEBUG, "Reading codebook: {} (cached while determining the versions)", file.getFileName());
+                }
+                else {
+                    logger.log(Level.INFO, "Reading codebook: {} (unchanged, taken from the cache)", file.getFileName());
+                    runReport.count(codebook.getDatasetVersionLabel(), "taken from cache", 1);
+                }
+            }
+        }
+        boolean fromCache = codebook!=null;
+
+        if(!fromCache){
+            logger.log(Level.INFO, "Reading codebook: {}", file.getFileName());
+            codebook = Codebook.readExcel(file, runParameters, runReport);
+            if(codebookCache!=null){
+                codebookCache.store(file, codebook);
+            }
+        }
+        // the problems are added once, when the codebook is requested, also when it was parsed to find its version
+        validationIssues.addAll(codebook.getValidationIssues());
+        runReport.addMeasurement(codebook.getDatasetVersionLabel(), "read codebook", measurement);
 
+        event.end();
+        if(event.shouldCommit()){
+            event.file = file.getFileName().toString();
+            event.versionLabel = String.valueOf(codebook.getDatasetVersionLabel());
+            event.fromCache = fromCache;
+            event.concepts = codebook.getAllConcepts().size();
+            event.commit();
+        }
+        return codebook;
+    }
+
+    /**
+     * returns the excel codebooks in a directory, sorted by filename
+     * @param codebookDirectory the directory
+     * @return list with the codebook files
+     * @throws IOException
+     */
+    private static List<Path> getCodebookFiles(String codebookDirectory) throws IOException {
+        List<Path> codebookFiles = new ArrayList<>();
         // read all files in the directory
         Path dir = FileSystems.getDefault().getPath(codebookDirectory);
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
             for (Path file: stream) {
                 String fileName = file.getFileName().toString();
-                // if the file is a proper excel file, create a codebook for it
-                if(fileName.endsWith(".xlsx") && !(fileName.startsWith("~"))) {
-                    logger.log(Level.INFO, "Reading codebook: {}", file.getFileName());
-//                    System.out.println(file.getFileName());
-                    Codebook codebook = Codebook.readExcel(file, runParameters);
-                    codebookManager.addCodebook(codebook);
+                // if the file is a proper excel file, we'll create a codebook for it; the validation report of an
+                // earlier run is not a codebook
+                if(fileName.endsWith(".xlsx") && !(fileName.startsWith("~")) && !fileName.equalsIgnoreCase(RunParameters.VALIDATION_REPORT_FILE_NAME)) {
+                    codebookFiles.add(file);
                 }
             }
         }
-        return codebookManager;
+        codebookFiles.sort(Comparator.comparing(Path::getFileName));
+        return codebookFiles;
+    }
+
+    /**
+     * waits for a codebook (or its version) to be read and returns it, passing on the exception if reading failed
+     * @param future the codebook being read
+     * @return the result
+     * @throws IOException
+     * @throws InvalidFormatException
+     */
+    private static <T> T getResult(Future<T> future) throws IOException, InvalidFormatException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the codebooks", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof InvalidFormatException) throw (InvalidFormatException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause.getMessage(), cause);
+        }
     }
 
     /**
-     * store a codebook in the codebook map
-     * @param codebook the codebook to store
+     * returns the report of the run, to which the statistics of reading the codebooks are added
+     * @return the report
      */
-    private void addCodebook(Codebook codebook){
-        codebookMap.put(codebook.getDatasetVersionLabel(), codebook);
+    RunReport getRunReport(){
+        return runReport;
+    }
+
+    /**
+     * returns the problems found while reading the codebooks
+     * @return the problems
+     */
+    ValidationIssues getValidationIssues(){
+        return validationIssues;
     }
 
     /**
      * get which versions exist of a the codebook (ordered, smallest first)
      * @return set with all versions
      */
-//    Set<Integer> getCodebookVersions(){
-//        return codebookMap.keySet();
-//    }
     Set<Double> getCodebookVersions(){
-        return codebookMap.keySet();
+        return codebookFileMap.keySet();
     }
 
     /**
      * get the codebook of a version
+     * the codebook is not kept by the manager. The versions following it are read in the background, so the versions
+     * should be requested in order
      * @param version    the version for which to retrieve the codebook
      * @return the codebook
+     * @throws IOException
+     * @throws InvalidFormatException
      */
-//    Codebook getCodebook(Integer version){
-    Codebook getCodebook(Double version){
-        return codebookMap.get(version);
+    Codebook getCodebook(Double version) throws IOException, InvalidFormatException {
+        // start reading this version and the next ones, if that did not happen yet
+        int count = 0;
+        for(Map.Entry<Double, Path> entry:codebookFileMap.tailMap(version, true).entrySet()){
+            if(count++==readAhead){
+                break;
+            }
+            Path file = entry.getValue();
+            codebookReadMap.computeIfAbsent(entry.getKey(), key -> executorService.submit(() -> readCodebook(file)));
+        }
+        return getResult(codebookReadMap.remove(version));
     }
-
-
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Provides the rows of the worksheets of an Excel codebook
+ * Implemented by a DOM reader, which builds the full POI workbook, and a streaming reader, which uses the XSSF
+ * event model to read one worksheet at a time
+ */
+interface CodebookSheetReader extends Closeable {
+
+    /**
+     * checks whether the codebook contains a worksheet (case insensitive)
+     * @param sheetName name of the worksheet
+     * @return true/false
+     */
+    boolean hasSheet(String sheetName);
+
+    /**
+     * reads the rows of a worksheet and hands them to the rowHandler, in order
+     * empty rows are skipped
+     * @param sheetName  name of the worksheet
+     * @param rowHandler handler which receives the rows
+     * @throws IOException
+     */
+    void readSheet(String sheetName, RowHandler rowHandler) throws IOException;
+
+    /**
+     * receives the rows of a worksheet
+     */
+    interface RowHandler {
+        /**
+         * handle a single row
+         * @param rowNumber zero-based row number in the worksheet
+         * @param values    the cell values of the row; the index in the list is the column index
+         * @throws IOException
+         */
+        void handleRow(int rowNumber, List<String> values) throws IOException;
+    }
+}
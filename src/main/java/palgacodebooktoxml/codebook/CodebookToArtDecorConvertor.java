@@ -19,13 +19,30 @@
 
 package palgacodebooktoxml.codebook;
 
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import palgacodebooktoxml.artdecor.*;
 import palgacodebooktoxml.settings.IdentifierManager;
 import palgacodebooktoxml.settings.RunParameters;
-
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import palgacodebooktoxml.utils.DigestingChannel;
+import palgacodebooktoxml.utils.ParallelGzipOutputStream;
+import palgacodebooktoxml.utils.ShardMerger;
+import palgacodebooktoxml.utils.Utf8FileWriter;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * datasets can contain multiple versions of a dataset
@@ -40,9 +57,33 @@ import java.util.*;
  * when a conceptList's options change in a new version, this leads to a new conceptListId. However,
  * in the terminology it is related to the same valueSet id. The original valueSet is set to deprecated and the
  * new one, with the date again reflecting when the set is in use
+ *
+ * the codebooks are converted one version at a time, in version order: a version is read, transformed and written,
+ * after which it is released. What is kept across versions are the concepts and valuesets the next version is
+ * compared with and the valuesets, which are written after all datasets, as an earlier valueset can still be
+ * deprecated by a later version
+ *
+ * the datasets and the valuesets are rendered on a pool of threads, as a transformed version no longer depends on
+ * the other versions, and appended to the output in order. In the sharded output every version gets its own dataset
+ * file and terminology association files instead
  */
 public class CodebookToArtDecorConvertor {
+    private static final Logger logger = LogManager.getLogger(CodebookToArtDecorConvertor.class.getName());
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    // number of characters of a rendered part of the output kept in memory before it is spilled to a temporary file
+    private static final int FRAGMENT_MEMORY_LIMIT = 4 * 1024 * 1024;
+    // number of valuesets rendered as one part of the output
+    private static final int VALUE_SETS_PER_FRAGMENT = 100;
+    // names of the shards shared by all versions; the shards of a version get the version added to their name
+    private static final String PROJECT_SHARD = "project.xml";
+    private static final String IDS_SHARD = "ids.xml";
+    private static final String TERMINOLOGY_SHARD = "terminology.xml";
+
     private final CodebookManager codebookManager;
+    private final RunParameters runParameters;
+    private final RunReport runReport;
+    private final ValidationIssues validationIssues;
 
     private final ArtDecorProject artDecorProject;
 
@@ -57,80 +98,73 @@ public class CodebookToArtDecorConvertor {
     // keeps track of the current ArtDecorConceptId for a conceptId, allowing us to reuse the conceptListId for inheritence
     private final Map<String, String> conceptIdToArtDecorConceptIdMap = new HashMap<>();
 
-    // track all the object we need to print
-    private final List<ArtDecorDataset> artDecorDatasetList = new ArrayList<>();
-    private final List<ArtDecorTerminologyConcept> artDecorTerminologyConceptList = new ArrayList<>();
-    private final List<ArtDecorTerminologyValueSet> artDecorTerminologyValueSetList = new ArrayList<>();
+    // track the valuesets we need to print
     private final List<ArtDecorValueSet> artDecorValueSetList = new ArrayList<>();
 
+    // the terminology associations are written to temporary files while the datasets are converted, as they are
+    // part of the terminology, which follows the datasets in the output
+    private Writer terminologyValueSetWriter;
+    private Writer terminologyConceptWriter;
+
     private final IdentifierManager identifierManager = IdentifierManager.getIdentifierManager();
 
     public CodebookToArtDecorConvertor(CodebookManager codebookManager, RunParameters runParameters){
         this.artDecorProject = new ArtDecorProject(runParameters);
         this.codebookManager = codebookManager;
-    }
-
-    public void transformCodebooks(){
-        transformToArtDecor();
-        buildConceptHierarchy();
+        this.runParameters = runParameters;
+        this.runReport = codebookManager.getRunReport();
+        this.validationIssues = codebookManager.getValidationIssues();
     }
 
     /**
-     * build the hierarchy
+     * transform the codebook of a single version to an artdecor dataset
+     * @param codebook the codebook
+     * @return the dataset, with its concept tree built
+     * @throws IOException
      */
-    private void buildConceptHierarchy(){
-        artDecorDatasetList.forEach(ArtDecorDataset::connectConcepts);
-    }
-
-    /**
-     * transform codebooks to artdecor datasets
-     */
-//    private void transformToArtDecor(){
-//        Set<Integer> versions = codebookManager.getCodebookVersions();
-//        for(int version:versions){
-//            artDecorChangedValueSetMap = new HashMap<>();
-//
-//            // retrieve the codebook for the version
-//            Codebook codebook = codebookManager.getCodebook(version);
-//
-//            // tell the identifier to use a different date to generate its conceptlist identifiers
-//            identifierManager.setConceptListId(codebook.getEffectiveDateAsDate());
-//
-//            // create the dataset based on the codebook
-//            generateArtDecorDataSet(codebook);
-//
-//            // add the changed ValueSets to the "current" valuesets
-//            artDecorValueSetMap.putAll(artDecorChangedValueSetMap);
-//        }
-//    }
-
-    private void transformToArtDecor(){
-        Set<Double> versions = codebookManager.getCodebookVersions();
-        for(double version:versions){
-            artDecorChangedValueSetMap = new HashMap<>();
-
-            // retrieve the codebook for the version
-            Codebook codebook = codebookManager.getCodebook(version);
-
-            // tell the identifier to use a different date to generate its conceptlist identifiers
-            identifierManager.setConceptListId(codebook.getEffectiveDateAsDate());
-
-            // create the dataset based on the codebook
-            generateArtDecorDataSet(codebook);
-
-            // add the changed ValueSets to the "current" valuesets
-            artDecorValueSetMap.putAll(artDecorChangedValueSetMap);
+    private ArtDecorDataset transformCodebook(Codebook codebook) throws IOException {
+        RunReport.Measurement measurement = runReport.startMeasurement();
+        ConversionEvents.VersionTransformEvent event = new ConversionEvents.VersionTransformEvent();
+        event.begin();
+        int valueSetCount = artDecorValueSetList.size();
+        artDecorChangedValueSetMap = new HashMap<>();
+
+        // tell the identifier to use a different date to generate its conceptlist identifiers
+        identifierManager.setConceptListId(codebook.getEffectiveDateAsDate());
+
+        // create the dataset based on the codebook
+        ArtDecorDataset artDecorDataset = generateArtDecorDataSet(codebook);
+
+        // add the changed ValueSets to the "current" valuesets
+        artDecorValueSetMap.putAll(artDecorChangedValueSetMap);
+
+        // build the hierarchy
+        artDecorDataset.connectConcepts();
+
+        double version = codebook.getDatasetVersionLabel();
+        runReport.addMeasurement(version, "transform", measurement);
+        runReport.count(version, "transformed concepts", codebook.getAllConcepts().size());
+        runReport.count(version, "new value sets", artDecorValueSetList.size()-valueSetCount);
+
+        event.end();
+        if(event.shouldCommit()){
+            event.versionLabel = String.valueOf(version);
+            event.concepts = codebook.getAllConcepts().size();
+            event.newValueSets = artDecorValueSetList.size()-valueSetCount;
+            event.commit();
         }
+        return artDecorDataset;
     }
 
     /**
      * generate artdecor dataset for a single codebook
      * @param codebook codebook object
+     * @return the dataset
+     * @throws IOException
      */
-    private void generateArtDecorDataSet(Codebook codebook){
-        // create a new artdecor dataset and store it
+    private ArtDecorDataset generateArtDecorDataSet(Codebook codebook) throws IOException {
+        // create a new artdecor dataset
         ArtDecorDataset artDecorDataset = codebook.createArtDecorDataset(identifierManager.getNextDataSetId());
-        artDecorDatasetList.add(artDecorDataset);
 
         // retrieve all concepts stored in the codebook and loop over them
         Collection<Concept> allConcepts = codebook.getAllConcepts();
@@ -166,6 +200,7 @@ public class CodebookToArtDecorConvertor {
             // add this concept to the terminology
             addConceptTerminology(concept, artdecorConceptId);
         }
+        return artDecorDataset;
     }
 
     /**
@@ -197,8 +232,9 @@ public class CodebookToArtDecorConvertor {
      * add the concept's information to the terminology
      * @param concept           the concept in codebook format
      * @param artdecorConceptId the concept in art-decor format
+     * @throws IOException
      */
-    private void addConceptTerminology(Concept concept, String artdecorConceptId){
+    private void addConceptTerminology(Concept concept, String artdecorConceptId) throws IOException {
         String codeSystemName = concept.getCodesystem();
         String effectiveDate = concept.getEffectiveDate();
         ArtDecorTerminologyConcept artDecorTerminologyConcept =
@@ -211,7 +247,7 @@ public class CodebookToArtDecorConvertor {
                         effectiveDate,
                         IdentifierManager.getIdentifierManager().getCodeSystemId(codeSystemName, effectiveDate)
                 );
-        artDecorTerminologyConceptList.add(artDecorTerminologyConcept);
+        artDecorTerminologyConcept.writeXML(terminologyConceptWriter);
     }
 
 
@@ -226,8 +262,9 @@ public class CodebookToArtDecorConvertor {
      *
      * @param concept the concept in codebook format
      * @param artDecorConcept the concept in artdecor format
+     * @throws IOException
      */
-    private void handleConceptOptions(Concept concept, ArtDecorConcept artDecorConcept){
+    private void handleConceptOptions(Concept concept, ArtDecorConcept artDecorConcept) throws IOException {
         ArtDecorValueSet artDecorValueSet = concept.generateArtDecorValueSet();
         String conceptId = concept.getId();
         String effectiveDate = concept.getEffectiveDate();
@@ -251,8 +288,9 @@ public class CodebookToArtDecorConvertor {
      * @param artDecorValueSet     the new artDecorValueSet
      * @param conceptId            the id of the concept
      * @param effectiveDate        denotes after which the value set can be considered for use
+     * @throws IOException
      */
-    private void handleNewValueSet(ArtDecorConcept artDecorConcept, ArtDecorValueSet artDecorValueSet, String conceptId, String effectiveDate, String codeListRef){
+    private void handleNewValueSet(ArtDecorConcept artDecorConcept, ArtDecorValueSet artDecorValueSet, String conceptId, String effectiveDate, String codeListRef) throws IOException {
         // create an id for the valueset and tell the concept that the status of the valueset is NEW
         String artdecorValueSetId = identifierManager.getNextValueSetId();
         artDecorConcept.setXMLConceptListTypeStatus("NEW");
@@ -268,14 +306,28 @@ public class CodebookToArtDecorConvertor {
      * @param conceptId        identifier of the concept
      * @param effectiveDate    denotes after which the value set can be considered for use
      * @param codeListRef      reference to codelist, allowing us to find the existing value set
+     * @throws IOException
      */
-    private void handleExistingValueSet(ArtDecorConcept artDecorConcept, ArtDecorValueSet artDecorValueSet, String conceptId, String effectiveDate, String codeListRef){
+    private void handleExistingValueSet(ArtDecorConcept artDecorConcept, ArtDecorValueSet artDecorValueSet, String conceptId, String effectiveDate, String codeListRef) throws IOException {
         String artdecorConceptListId;
         // retrieve the existing valueset
         ArtDecorValueSet existingArtDecorValueSet = artDecorValueSetMap.get(codeListRef);
 
         // check whether the valuesets are the same
-        if(artDecorValueSet.sameValues(existingArtDecorValueSet)){
+        ConversionEvents.ValueSetComparisonEvent event = new ConversionEvents.ValueSetComparisonEvent();
+        event.begin();
+        boolean sameValues = artDecorValueSet.sameValues(existingArtDecorValueSet);
+        event.end();
+        if(event.shouldCommit()){
+            event.versionLabel = artDecorValueSet.getVersionLabel();
+            event.conceptId = conceptId;
+            event.codelist = codeListRef;
+            event.options = artDecorValueSet.getConceptOptionCount();
+            event.same = sameValues;
+            event.commit();
+        }
+
+        if(sameValues){
             // check whether there is a conceptListId we can reuse
             // this basically happens if a new version of a concept has the same ValueSet as the previous version of the concept
             if(conceptIdToArtDecorConceptListIdMap.containsKey(conceptId)){
@@ -315,8 +367,9 @@ public class CodebookToArtDecorConvertor {
      * @param conceptId
      * @param effectiveDate
      * @param artdecorValueSetId
+     * @throws IOException
      */
-    private void addConceptListAssociations(ArtDecorConcept artDecorConcept, String conceptId, String effectiveDate, String artdecorValueSetId){
+    private void addConceptListAssociations(ArtDecorConcept artDecorConcept, String conceptId, String effectiveDate, String artdecorValueSetId) throws IOException {
         // generate a new conceptlist identifier based on this artdecor concept's identifier
         String artdecorConceptListId = identifierManager.getNextConceptListId(artDecorConcept.getArtdecorConceptId());
         artDecorConcept.setArtdecorConceptListId(artdecorConceptListId);
@@ -324,9 +377,9 @@ public class CodebookToArtDecorConvertor {
         // Store the conceptListId currently in use for the conceptId. This is used to refer to when optionlist is the same
         conceptIdToArtDecorConceptListIdMap.put(conceptId, artdecorConceptListId);
 
-        // create terminology for it and store the terminology
+        // create terminology for it and write the terminology
         ArtDecorTerminologyValueSet artDecorTerminologyValueSet = new ArtDecorTerminologyValueSet(artdecorConceptListId, artdecorValueSetId, effectiveDate, effectiveDate);
-        artDecorTerminologyValueSetList.add(artDecorTerminologyValueSet);
+        artDecorTerminologyValueSet.writeXML(terminologyValueSetWriter);
     }
 
     /**
@@ -355,11 +408,12 @@ public class CodebookToArtDecorConvertor {
     }
 
     /**
-     * Generate the starting XML
-     * @return starting XML string
+     * Write the starting XML
+     * @param writer the writer for the output
+     * @throws IOException
      */
-    private String generateStartXML(){
-        return ("<?xml-model\n" +
+    private void writeStartXML(Writer writer) throws IOException {
+        writer.write("<?xml-model\n" +
                 "href=\"http://art-decor.org/ADAR/rv/DECOR.sch\" type=\"application/xml\" schematypes=\"http://purl.oclc.org/dsdl/schematron\"\n" +
                 "?>" +
                 "<decor xmlns:cda=\"urn:hl7-org:v3\" xmlns:hl7=\"urn:hl7-org:v3\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" " +
@@ -368,113 +422,486 @@ public class CodebookToArtDecorConvertor {
     }
 
     /**
-     * Generate the Project XML
-     * @return XML string
+     * Write the Project XML
+     * @param writer the writer for the output
+     * @throws IOException
      */
-    private String generateProjectXML(){
-        return artDecorProject.toXML();
+    private void writeProjectXML(Writer writer) throws IOException {
+        artDecorProject.writeXML(writer);
     }
 
     /**
-     * Generates the XML for the datasets, with each dataset generating its own XML
-     * @return XML string
+     * Converts the codebooks and writes the XML for the datasets, with each dataset writing its own XML
+     * the datasets are rendered on the render pool, so the next version can be transformed in the meantime, and
+     * appended in version order. Each version is released once it has been rendered
+     * @param writer            the writer for the output
+     * @param renderPool        the threads which render the datasets
+     * @param fragmentDirectory directory for datasets which are too large to keep in memory until they are appended
      * @throws Exception
      */
-    private String generateDatasetsXML() throws Exception{
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("<datasets>\n");
-        for(ArtDecorDataset artDecorDataset:artDecorDatasetList){
-            stringBuilder.append(artDecorDataset.toXML());
+    private void writeDatasetsXML(Utf8FileWriter writer, ExecutorService renderPool, Path fragmentDirectory) throws Exception{
+        writer.write("<datasets>\n");
+        int renderThreads = runParameters.getRenderThreads();
+        try (OrderedRenderer orderedRenderer = new OrderedRenderer(renderPool, renderThreads, fragmentDirectory, FRAGMENT_MEMORY_LIMIT)) {
+            // the codebooks are transformed in version order by this thread only, as the identifiers and the
+            // inheritance depend on that order. At most one dataset per thread waits to be appended, so the
+            // transformation cannot run far ahead of the output
+            for (double version : codebookManager.getCodebookVersions()) {
+                ArtDecorDataset artDecorDataset = transformCodebook(codebookManager.getCodebook(version));
+                orderedRenderer.add(datasetWriter -> writeDatasetXML(artDecorDataset, datasetWriter));
+                while (orderedRenderer.size()>renderThreads) {
+                    orderedRenderer.appendNext(writer);
+                }
+            }
+            orderedRenderer.appendAll(writer);
         }
-        stringBuilder.append("</datasets>\n");
-        return stringBuilder.toString();
+        writer.write("</datasets>\n");
+    }
+
+    /**
+     * writes the XML of a dataset and releases its concepts
+     * rendering reads nothing that the transformation of later versions changes
+     * @param artDecorDataset the dataset
+     * @param writer          the writer for the dataset
+     * @throws Exception
+     */
+    private void writeDatasetXML(ArtDecorDataset artDecorDataset, Writer writer) throws Exception{
+        RunReport.Measurement measurement = runReport.startMeasurement();
+        ConversionEvents.SectionRenderEvent event = beginSection();
+        artDecorDataset.writeXML(writer);
+        endSection(event, "dataset", String.valueOf(artDecorDataset.getVersionLabel()));
+        runReport.addMeasurement(artDecorDataset.getVersionLabel(), "write dataset", measurement);
+        artDecorDataset.releaseConcepts();
+    }
+
+    /**
+     * creates the threads which render the datasets and valuesets
+     * @return the pool
+     */
+    private ForkJoinPool createRenderPool(){
+        return new ForkJoinPool(runParameters.getRenderThreads(), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("xml-renderer-"+thread.getPoolIndex());
+            return thread;
+        }, null, false);
     }
 
     /**
-     * Generate the Scenarios XML. Currently has no real contents
-     * @return XML string
+     * Write the Scenarios XML. Currently has no real contents
+     * @param writer the writer for the output
+     * @throws IOException
      */
-    private String generateScenarioXML(){
-        return "<scenarios>\n" +
+    private void writeScenarioXML(Writer writer) throws IOException {
+        writer.write("<scenarios>\n" +
                 "<actors/>\n" +
-                "</scenarios>\n";
+                "</scenarios>\n");
     }
 
     /**
-     * Generate the XML for the identifiers part
-     * @return XML string
+     * Write the XML for the identifiers part
+     * @param writer the writer for the output
+     * @throws IOException
      */
-    private String generateIDsXML(){
-        String outputXML = "<ids>\n";
-        outputXML += identifierManager.getProjectIdsXML();
-        outputXML += "</ids>\n";
-        return outputXML;
+    private void writeIDsXML(Writer writer) throws IOException {
+        writer.write("<ids>\n");
+        writer.write(identifierManager.getProjectIdsXML());
+        writer.write("</ids>\n");
     }
 
     /**
-     * Generate the terminology XML part
-     * @return XML string
+     * Write the terminology XML part
+     * @param writer                  the writer for the output
+     * @param terminologyValueSetFile temporary file with the XML linking concepts to their valuesets
+     * @param terminologyConceptFile  temporary file with the XML linking concepts to a codesystem and code
+     * @param orderedRenderer         renderer which already has the codesystems and the valuesets as its next parts
+     * @throws Exception
      */
-    private String generateTerminologyAssessmentXML(){
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("<terminology>\n");
+    private void writeTerminologyAssessmentXML(Utf8FileWriter writer, Path terminologyValueSetFile, Path terminologyConceptFile, OrderedRenderer orderedRenderer) throws Exception {
+        writer.write("<terminology>\n");
+
+        // write XML linking a Concept to its ValueSet; the temporary files are UTF-8 as well, so their bytes are copied
+        writer.transferFrom(terminologyValueSetFile);
+
+        // write XML linking concept to a codesystem and code
+        writer.transferFrom(terminologyConceptFile);
+
+        // add the codesystem xml and the Value Set XML
+        orderedRenderer.appendAll(writer);
 
-        // generate XML linking a Concept to its ValueSet
-        for(ArtDecorTerminologyValueSet artDecorTerminologyValueSet:artDecorTerminologyValueSetList){
-            stringBuilder.append(artDecorTerminologyValueSet.toXML());
+        writer.write("</terminology>");
+    }
+
+    /**
+     * adds the parts after the datasets to a renderer: the scenarios and ids, the codesystems and the valuesets,
+     * in groups of VALUE_SETS_PER_FRAGMENT
+     * @param orderedRenderer the renderer
+     */
+    private void addSectionParts(OrderedRenderer orderedRenderer){
+        orderedRenderer.add(sectionWriter -> {
+            writeScenarioXML(sectionWriter);
+            writeIDsXML(sectionWriter);
+        });
+        orderedRenderer.add(sectionWriter -> sectionWriter.write(identifierManager.getCodeSystemXML()));
+        for(int i = 0; i < artDecorValueSetList.size(); i += VALUE_SETS_PER_FRAGMENT){
+            List<ArtDecorValueSet> artDecorValueSets = artDecorValueSetList.subList(i, Math.min(i+VALUE_SETS_PER_FRAGMENT, artDecorValueSetList.size()));
+            orderedRenderer.add(sectionWriter -> writeValueSetXML(sectionWriter, artDecorValueSets));
         }
+    }
 
-        // generate XML linking concept to a codesystem and code
-        for(ArtDecorTerminologyConcept artDecorTerminologyConcept:artDecorTerminologyConceptList){
-            stringBuilder.append(artDecorTerminologyConcept.toXML());
+    /**
+     * Write the XML for valuesets
+     * @param writer            the writer for the output
+     * @param artDecorValueSets the valuesets
+     * @throws IOException
+     */
+    private void writeValueSetXML(Writer writer, List<ArtDecorValueSet> artDecorValueSets) throws IOException {
+        for(ArtDecorValueSet artDecorValueSet:artDecorValueSets){
+            artDecorValueSet.writeXML(writer);
         }
+    }
 
-        // add the codesystem xml
-        stringBuilder.append(identifierManager.getCodeSystemXML());
+    /**
+     * Write the final part of the XML
+     * @param writer the writer for the output
+     * @throws IOException
+     */
+    private void writeFinishXML(Writer writer) throws IOException {
+        writer.write("<rules/>\n" +
+               "<issues notifier=\"on\"/>\n" +
+               "</decor>\n");
+    }
 
-        // add the Value Set XML
-        stringBuilder.append(generateValueSetXML());
+    /**
+     * adds a phase of the run to the report and starts measuring the next one
+     * @param phase       name of the phase
+     * @param measurement the measurement started at the beginning of the phase
+     * @return the measurement for the next phase
+     */
+    private RunReport.Measurement addMeasurement(String phase, RunReport.Measurement measurement){
+        runReport.addMeasurement(phase, measurement);
+        return runReport.startMeasurement();
+    }
 
-        stringBuilder.append("</terminology>");
-        return stringBuilder.toString();
+    /**
+     * starts a flight recorder event for writing a section of the output
+     * @return the event
+     */
+    private static ConversionEvents.SectionRenderEvent beginSection(){
+        ConversionEvents.SectionRenderEvent event = new ConversionEvents.SectionRenderEvent();
+        event.begin();
+        return event;
     }
 
     /**
-     * Generate the XML for all the valuesets
-     * @return XML string
+     * ends a flight recorder event for writing a section of the output, committing it if it is recorded
+     * @param event        the event
+     * @param section      name of the section
+     * @param versionLabel the version of the section, if it belongs to a version
      */
-    private String generateValueSetXML(){
-        StringBuilder stringBuilder = new StringBuilder();
-        for(ArtDecorValueSet artDecorValueSet:artDecorValueSetList){
-            stringBuilder.append(artDecorValueSet.toXML());
+    private static void endSection(ConversionEvents.SectionRenderEvent event, String section, String versionLabel){
+        event.end();
+        if(event.shouldCommit()){
+            event.section = section;
+            event.versionLabel = versionLabel;
+            event.commit();
         }
-        return stringBuilder.toString();
     }
 
     /**
-     * Generate the final part of the XML
-     * @return XML string
+     * opens the output file, which is compressed while it is written if the runparameters ask for it
+     * @param file the output file
+     * @return the channel for the output
+     * @throws IOException
      */
-    private String generateFinishXML(){
-        return "<rules/>\n" +
-               "<issues notifier=\"on\"/>\n" +
-               "</decor>\n";
+    private WritableByteChannel createOutputChannel(Path file) throws IOException {
+        if(!runParameters.compressOutput()){
+            return FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        int level = runParameters.getCompressionLevel();
+        OutputStream outputStream = Files.newOutputStream(file);
+        if(runParameters.getCompressionThreads()>1){
+            outputStream = new ParallelGzipOutputStream(outputStream, level, runParameters.getCompressionThreads());
+        }
+        else{
+            outputStream = new GZIPOutputStream(outputStream, OUTPUT_BUFFER_SIZE){
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+        return Channels.newChannel(outputStream);
+    }
+
+    /**
+     * moves the new output to the output file, unless the digest of the previous output, which is kept next to the
+     * output file, shows that the contents are the same. The digest is removed before the output file is replaced,
+     * so it never belongs to a different output
+     * @param newOutputFile the new output
+     * @param outputFile    the output file
+     * @param digest        the digest of the new output
+     * @throws IOException
+     */
+    private void replaceOutput(Path newOutputFile, Path outputFile, String digest) throws IOException {
+        Path digestFile = Paths.get(runParameters.getOutputDigestFile());
+        if(runParameters.skipUnchangedOutput() && Files.exists(outputFile) && Files.exists(digestFile) &&
+                new String(Files.readAllBytes(digestFile), StandardCharsets.UTF_8).trim().equals(digest)){
+            logger.log(Level.INFO, "The output is the same as that of the previous run; {} is left as it is", outputFile);
+            return;
+        }
+
+        Files.deleteIfExists(digestFile);
+        moveAtomically(newOutputFile, outputFile);
+        Path newDigestFile = getTemporarySibling(digestFile);
+        try {
+            Files.write(newDigestFile, (digest+"\n").getBytes(StandardCharsets.UTF_8));
+            moveAtomically(newDigestFile, digestFile);
+        } finally {
+            Files.deleteIfExists(newDigestFile);
+        }
+    }
+
+    /**
+     * returns the file to which a file is written before it replaces that file; it is in the same directory, so it
+     * can be renamed, and it gets the same permissions as other new files, unlike a file from createTempFile
+     * @param file the file
+     * @return the temporary file
+     */
+    private static Path getTemporarySibling(Path file){
+        return file.resolveSibling(file.getFileName()+".tmp");
+    }
+
+    /**
+     * renames a file, replacing the target, in a single step where the file system allows it, so nobody sees a
+     * partly written target
+     * @param source the file
+     * @param target the new name
+     * @throws IOException
+     */
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e){
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Convert the codebooks and write the output to a file, or to shards if the runparameters ask for it
+     * every part is written as it is generated, so neither the document nor all the codebooks are ever
+     * held in memory as a whole
+     * @param fileName output filename
+     * @throws Exception
+     */
+    public void convert(String fileName) throws Exception{
+        RunReport.Measurement totalMeasurement = runReport.startMeasurement();
+        if(runParameters.shardOutput()){
+            writeShards(Paths.get(runParameters.getShardDirectory()));
+        }
+        else{
+            writeOutput(fileName);
+        }
+        runReport.addMeasurement("convert", totalMeasurement);
+
+        runReport.logSummary();
+        validationIssues.logSummary();
+        if(runParameters.writeRunReport()){
+            runReport.writeJSON(Paths.get(runParameters.getRunReportFile()));
+        }
+        if(runParameters.writeValidationReport()){
+            ValidationReport.write(runParameters.getValidationReportFile(), validationIssues, runReport);
+        }
     }
 
     /**
-     * Write the output to a file
+     * Convert the codebooks and write the output to a single file
+     * the output is written to a temporary file, while its digest is calculated, and only replaces the output file
+     * when it is complete and different from the previous output
      * @param fileName output filename
      * @throws Exception
      */
-    public void writeOutput(String fileName) throws Exception{
-        try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(fileName))) {
-            bufferedWriter.write(generateStartXML());
-            bufferedWriter.write(generateProjectXML());
-            bufferedWriter.write(generateDatasetsXML());
-            bufferedWriter.write(generateScenarioXML());
-            bufferedWriter.write(generateIDsXML());
-            bufferedWriter.write(generateTerminologyAssessmentXML());
-            bufferedWriter.write(generateFinishXML());
+    private void writeOutput(String fileName) throws Exception{
+        Path outputFile = Paths.get(fileName).toAbsolutePath();
+        Path outputDirectory = outputFile.getParent();
+        Path newOutputFile = getTemporarySibling(outputFile);
+        Path terminologyValueSetFile = Files.createTempFile(outputDirectory, "terminologyValueSets", ".tmp");
+        Path terminologyConceptFile = null;
+        ForkJoinPool renderPool = createRenderPool();
+        try {
+            terminologyConceptFile = Files.createTempFile(outputDirectory, "terminologyConcepts", ".tmp");
+            // the output is UTF-8 whatever the platform's default charset is, as the XML has no encoding declaration
+            // the digest is of the XML, so it does not depend on the compression
+            DigestingChannel outputChannel = new DigestingChannel(createOutputChannel(newOutputFile));
+            try (Utf8FileWriter outputWriter = new Utf8FileWriter(outputChannel);
+                 Utf8FileWriter valueSetWriter = new Utf8FileWriter(terminologyValueSetFile);
+                 Utf8FileWriter conceptWriter = new Utf8FileWriter(terminologyConceptFile);
+                 OrderedRenderer orderedRenderer = new OrderedRenderer(renderPool, runParameters.getRenderThreads(), outputDirectory, FRAGMENT_MEMORY_LIMIT)) {
+                terminologyValueSetWriter = valueSetWriter;
+                terminologyConceptWriter = conceptWriter;
+
+                RunReport.Measurement measurement = runReport.startMeasurement();
+                ConversionEvents.SectionRenderEvent event = beginSection();
+                writeStartXML(outputWriter);
+                writeProjectXML(outputWriter);
+                endSection(event, "project", "");
+                measurement = addMeasurement("write project", measurement);
+
+                writeDatasetsXML(outputWriter, renderPool, outputDirectory);
+                valueSetWriter.flush();
+                conceptWriter.flush();
+                measurement = addMeasurement("convert datasets", measurement);
+
+                // nothing after the datasets changes any more, so the ids, codesystems and valuesets are rendered on
+                // the render pool while the terminology associations are copied
+                event = beginSection();
+                addSectionParts(orderedRenderer);
+                orderedRenderer.appendNext(outputWriter);
+                endSection(event, "ids", "");
+                measurement = addMeasurement("write ids", measurement);
+
+                event = beginSection();
+                writeTerminologyAssessmentXML(outputWriter, terminologyValueSetFile, terminologyConceptFile, orderedRenderer);
+                writeFinishXML(outputWriter);
+                endSection(event, "terminology", "");
+                addMeasurement("write terminology", measurement);
+            }
+            replaceOutput(newOutputFile, outputFile, outputChannel.getDigest());
+        } finally {
+            terminologyValueSetWriter = null;
+            terminologyConceptWriter = null;
+            renderPool.shutdownNow();
+            renderPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            Files.deleteIfExists(terminologyValueSetFile);
+            if(terminologyConceptFile!=null) {
+                Files.deleteIfExists(terminologyConceptFile);
+            }
+            Files.deleteIfExists(newOutputFile);
         }
     }
+
+    /**
+     * Convert the codebooks and write the output as shards: the project, a dataset and the terminology associations
+     * of each version, the ids and the rest of the terminology, each in its own file, with a manifest giving the
+     * order in which they form the DECOR file
+     * the manifest is written last, so the shards are complete when it exists
+     * @param shardDirectory the directory for the shards
+     * @throws Exception
+     */
+    private void writeShards(Path shardDirectory) throws Exception{
+        Files.createDirectories(shardDirectory);
+        Path manifestFile = shardDirectory.resolve(ShardMerger.MANIFEST_FILE_NAME);
+        // remove the shards of the previous run, which may have had other versions
+        if(Files.exists(manifestFile)){
+            for(Path shard:ShardMerger.readManifest(manifestFile)){
+                Files.deleteIfExists(shard);
+            }
+            Files.delete(manifestFile);
+        }
+
+        RunReport.Measurement measurement = runReport.startMeasurement();
+        ConversionEvents.SectionRenderEvent event = beginSection();
+        try (Utf8FileWriter writer = new Utf8FileWriter(shardDirectory.resolve(PROJECT_SHARD))) {
+            writeStartXML(writer);
+            writeProjectXML(writer);
+            writer.write("<datasets>\n");
+        }
+        endSection(event, "project", "");
+        measurement = addMeasurement("write project", measurement);
+
+        writeDatasetShards(shardDirectory);
+        measurement = addMeasurement("convert datasets", measurement);
+
+        event = beginSection();
+        try (Utf8FileWriter writer = new Utf8FileWriter(shardDirectory.resolve(IDS_SHARD))) {
+            writer.write("</datasets>\n");
+            writeScenarioXML(writer);
+            writeIDsXML(writer);
+            writer.write("<terminology>\n");
+        }
+        endSection(event, "ids", "");
+        measurement = addMeasurement("write ids", measurement);
+
+        event = beginSection();
+        try (Utf8FileWriter writer = new Utf8FileWriter(shardDirectory.resolve(TERMINOLOGY_SHARD))) {
+            writer.write(identifierManager.getCodeSystemXML());
+            writeValueSetXML(writer, artDecorValueSetList);
+            writer.write("</terminology>");
+            writeFinishXML(writer);
+        }
+        endSection(event, "terminology", "");
+        addMeasurement("write terminology", measurement);
+
+        // the associations of all versions linking concepts to valuesets come before those linking concepts to codes
+        Set<Double> versions = codebookManager.getCodebookVersions();
+        List<String> manifestLines = new ArrayList<>();
+        manifestLines.add(ShardMerger.manifestLine("project", "", PROJECT_SHARD));
+        for(double version:versions){
+            manifestLines.add(ShardMerger.manifestLine("dataset", String.valueOf(version), getShardName("dataset", version)));
+        }
+        manifestLines.add(ShardMerger.manifestLine("ids", "", IDS_SHARD));
+        for(double version:versions){
+            manifestLines.add(ShardMerger.manifestLine("valueSetAssociations", String.valueOf(version), getShardName("valueset-associations", version)));
+        }
+        for(double version:versions){
+            manifestLines.add(ShardMerger.manifestLine("conceptAssociations", String.valueOf(version), getShardName("concept-associations", version)));
+        }
+        manifestLines.add(ShardMerger.manifestLine("terminology", "", TERMINOLOGY_SHARD));
+        ShardMerger.writeManifest(manifestFile, manifestLines);
+    }
+
+    /**
+     * Converts the codebooks and writes a dataset shard and terminology association shards for each version
+     * the codebooks are transformed in version order by this thread, which also writes the terminology associations,
+     * while the datasets are written by the render pool. At most one transformed dataset per thread waits to be
+     * written, so the transformation cannot run far ahead of the output
+     * @param shardDirectory the directory for the shards
+     * @throws Exception
+     */
+    private void writeDatasetShards(Path shardDirectory) throws Exception{
+        int renderThreads = runParameters.getRenderThreads();
+        ForkJoinPool renderPool = createRenderPool();
+        Deque<Future<Void>> writerFutures = new ArrayDeque<>();
+        try {
+            for (double version : codebookManager.getCodebookVersions()) {
+                ArtDecorDataset artDecorDataset;
+                try (Utf8FileWriter valueSetWriter = new Utf8FileWriter(shardDirectory.resolve(getShardName("valueset-associations", version)));
+                     Utf8FileWriter conceptWriter = new Utf8FileWriter(shardDirectory.resolve(getShardName("concept-associations", version)))) {
+                    terminologyValueSetWriter = valueSetWriter;
+                    terminologyConceptWriter = conceptWriter;
+                    artDecorDataset = transformCodebook(codebookManager.getCodebook(version));
+                } finally {
+                    terminologyValueSetWriter = null;
+                    terminologyConceptWriter = null;
+                }
+
+                Path datasetFile = shardDirectory.resolve(getShardName("dataset", version));
+                writerFutures.add(renderPool.submit(() -> {
+                    try (Utf8FileWriter writer = new Utf8FileWriter(datasetFile)) {
+                        writeDatasetXML(artDecorDataset, writer);
+                    }
+                    return null;
+                }));
+                while (writerFutures.size()>renderThreads) {
+                    OrderedRenderer.waitFor(writerFutures.remove());
+                }
+            }
+            while (!writerFutures.isEmpty()) {
+                OrderedRenderer.waitFor(writerFutures.remove());
+            }
+        } finally {
+            // make sure no writer still uses a shard when we return
+            renderPool.shutdownNow();
+            renderPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * returns the file name of a shard of a version
+     * @param section the section in the shard
+     * @param version the version
+     * @return the file name
+     */
+    private static String getShardName(String section, double version){
+        return section+"-"+version+".xml";
+    }
 }
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import palgacodebooktoxml.artdecor.ArtDecorValueSet;
+import palgacodebooktoxml.settings.Statics;
+import palgacodebooktoxml.utils.ExcelUtils;
+import palgacodebooktoxml.utils.SheetHeader;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The options of a codelist worksheet
+ * A codelist is read and validated once per codebook; all concepts referring to the worksheet share it
+ */
+class Codelist {
+    private final List<ConceptOption> conceptOptionList;
+
+    // the ART-DECOR value set for this codelist; created for the first concept which needs it in this version
+    private ArtDecorValueSet artDecorValueSet;
+
+    private Codelist(Collection<ConceptOption> conceptOptions){
+        this.conceptOptionList = List.copyOf(conceptOptions);
+    }
+
+    /**
+     * reads a codelist worksheet
+     * @param sheetReader  the Excel codebook
+     * @param codelist_ref the codelist reference, which is the name of the worksheet
+     * @param languages    languages which should be added
+     * @param versionLabel     version label of the codebook
+     * @param validationIssues the problems of the run, to which the problems in the codelist are added
+     * @return the codelist; without options if the worksheet does not exist
+     * @throws IOException
+     */
+    static Codelist readCodelist(CodebookSheetReader sheetReader, String codelist_ref, Set<String> languages, String versionLabel, ValidationIssues validationIssues) throws IOException {
+        // options are stored by code, so a code which appears twice keeps the last row
+        Map<String, ConceptOption> conceptOptionsMap = new HashMap<>();
+        if(!sheetReader.hasSheet(codelist_ref)){
+            validationIssues.report(ValidationIssues.Rule.CODELIST_MISSING, versionLabel, codelist_ref, -1, "", "", codelist_ref);
+            return new Codelist(conceptOptionsMap.values());
+        }
+
+        List<CodelistColumns> codelistColumnsList = new ArrayList<>(1);
+        sheetReader.readSheet(codelist_ref, (rowNumber, values) -> {
+            // retrieve the header of the sheet
+            if(rowNumber==0){
+                SheetHeader sheetHeader = new SheetHeader(codelist_ref, values);
+                codelistColumnsList.add(new CodelistColumns(sheetHeader, languages));
+                validationIssues.reportMissingColumns(sheetHeader, versionLabel);
+            }
+            // parse the remaining rows
+            else if(!codelistColumnsList.isEmpty()){
+                ConceptOption conceptOption = createConceptOption(values, codelistColumnsList.get(0), rowNumber, versionLabel, validationIssues);
+                if(conceptOption!=null) {
+                    conceptOptionsMap.put(conceptOption.code, conceptOption);
+                }
+            }
+        });
+        return new Codelist(conceptOptionsMap.values());
+    }
+
+    /**
+     * validates whether the entry is valid
+     * @param codeListEntryCodesystem       codelist entry's codesystem
+     * @param codeListEntryCode             codelist entry's code
+     * @param codeListEntryDescription_code codelist entry's code description
+     * @param codelist_ref                  reference to the codelist's worksheet
+     * @param rowNumber                     row of the entry in the worksheet
+     * @param versionLabel                  version label of the codebook
+     * @param validationIssues              the problems of the run
+     * @return true/false
+     */
+    private static boolean isValidEntry(String codeListEntryCodesystem, String codeListEntryCode, String codeListEntryDescription_code, String codelist_ref, int rowNumber, String versionLabel, ValidationIssues validationIssues){
+        boolean isValidEntry=true;
+        int row = rowNumber+1;
+        if(Statics.mayBeTypo(codeListEntryCodesystem)){
+            validationIssues.report(ValidationIssues.Rule.CODELIST_CODESYSTEM_TYPO, versionLabel, codelist_ref, row, "codesystem", "", codeListEntryCodesystem, codelist_ref, Statics.getTypoValue(codeListEntryCodesystem));
+            isValidEntry = false;
+        }
+
+        // first check whether one of the mandatory fields is empty
+        if(codeListEntryCode.equalsIgnoreCase("")){
+            validationIssues.report(ValidationIssues.Rule.CODELIST_CODE_MISSING, versionLabel, codelist_ref, row, "code", "", codelist_ref, row);
+            isValidEntry = false;
+        }
+        if(codeListEntryCodesystem.equalsIgnoreCase("")){
+            validationIssues.report(ValidationIssues.Rule.CODELIST_CODESYSTEM_MISSING, versionLabel, codelist_ref, row, "codesystem", "", codelist_ref, row);
+            isValidEntry = false;
+        }
+        if(codeListEntryDescription_code.equalsIgnoreCase("")){
+            validationIssues.report(ValidationIssues.Rule.CODELIST_DESCRIPTION_MISSING, versionLabel, codelist_ref, row, "description_code", "", codelist_ref, row);
+            isValidEntry = false;
+        }
+        return isValidEntry;
+    }
+
+    /**
+     * creates an option for a codelist row
+     * @param values          values of the row in the codelist
+     * @param codelistColumns column indexes of the codelist sheet
+     * @param rowNumber       row in the worksheet
+     * @param versionLabel     version label of the codebook
+     * @param validationIssues the problems of the run
+     * @return the option, or null if the row is invalid
+     */
+    private static ConceptOption createConceptOption(List<String> values, CodelistColumns codelistColumns, int rowNumber, String versionLabel, ValidationIssues validationIssues){
+        String codeListEntryCode = ExcelUtils.getValue(values, codelistColumns.code);
+        String codeListEntryDescription_code = ExcelUtils.getValue(values, codelistColumns.description_code);
+        String codeListEntryCodesystem = ExcelUtils.getValue(values, codelistColumns.codesystem);
+
+        if(!isValidEntry(codeListEntryCodesystem, codeListEntryCode, codeListEntryDescription_code, codelistColumns.codelist_ref, rowNumber, versionLabel, validationIssues)){
+            return null;
+        }
+
+        // create a ConceptOption object for this entry, based on the codesystem, the code within the codesystem and the description of that code.
+        Map<String, LanguageConceptOptions> languageConceptOptionsMap = new HashMap<>();
+        // get the language-specific description and value
+        for (int i = 0; i < codelistColumns.languages.length; i++) {
+            String language = codelistColumns.languages[i];
+            String languageDescription = ExcelUtils.getValue(values, codelistColumns.description[i]);
+            String languageValue = ExcelUtils.getValue(values, codelistColumns.value[i]);
+            languageConceptOptionsMap.put(language, new LanguageConceptOptions(language, languageValue, languageDescription));
+        }
+        return new ConceptOption(codeListEntryCodesystem, codeListEntryCode, codeListEntryDescription_code, languageConceptOptionsMap.values());
+    }
+
+    /**
+     * returns whether the codelist has options
+     * @return true/false
+     */
+    boolean hasOptions(){
+        return conceptOptionList.size()>0;
+    }
+
+    /**
+     * returns the options of the codelist
+     * @return unmodifiable list with the options
+     */
+    List<ConceptOption> getConceptOptions(){
+        return conceptOptionList;
+    }
+
+    /**
+     * returns the ART-DECOR value set created for this codelist in this version, if any
+     * @return the value set or null
+     */
+    ArtDecorValueSet getArtDecorValueSet(){
+        return artDecorValueSet;
+    }
+
+    /**
+     * stores the ART-DECOR value set for this codelist, so concepts sharing the codelist share the value set
+     * @param artDecorValueSet the value set
+     */
+    void setArtDecorValueSet(ArtDecorValueSet artDecorValueSet){
+        this.artDecorValueSet = artDecorValueSet;
+    }
+
+    /**
+     * writes the codelist in the binary form used by the codebook cache
+     * @param dataOutputStream the stream
+     * @throws IOException
+     */
+    void writeTo(DataOutputStream dataOutputStream) throws IOException {
+        dataOutputStream.writeInt(conceptOptionList.size());
+        for(ConceptOption conceptOption:conceptOptionList){
+            CodebookCache.writeString(dataOutputStream, conceptOption.codesystemName);
+            CodebookCache.writeString(dataOutputStream, conceptOption.code);
+            CodebookCache.writeString(dataOutputStream, conceptOption.description_code);
+            dataOutputStream.writeInt(conceptOption.languageConceptOptionsList.size());
+            for(LanguageConceptOptions languageConceptOptions:conceptOption.languageConceptOptionsList){
+                CodebookCache.writeString(dataOutputStream, languageConceptOptions.language);
+                CodebookCache.writeString(dataOutputStream, languageConceptOptions.value);
+                CodebookCache.writeString(dataOutputStream, languageConceptOptions.description);
+            }
+        }
+    }
+
+    /**
+     * reads a codelist written by writeTo
+     * @param dataInputStream the stream
+     * @return the codelist
+     * @throws IOException
+     */
+    static Codelist readFrom(DataInputStream dataInputStream) throws IOException {
+        int optionCount = dataInputStream.readInt();
+        List<ConceptOption> conceptOptions = new ArrayList<>(optionCount);
+        for(int i=0; i<optionCount; i++){
+            String codesystemName = CodebookCache.readString(dataInputStream);
+            String code = CodebookCache.readString(dataInputStream);
+            String description_code = CodebookCache.readString(dataInputStream);
+            int languageCount = dataInputStream.readInt();
+            List<LanguageConceptOptions> languageConceptOptions = new ArrayList<>(languageCount);
+            for(int j=0; j<languageCount; j++){
+                String language = CodebookCache.readString(dataInputStream);
+                String value = CodebookCache.readString(dataInputStream);
+                String description = CodebookCache.readString(dataInputStream);
+                languageConceptOptions.add(new LanguageConceptOptions(language, value, description));
+            }
+            conceptOptions.add(new ConceptOption(codesystemName, code, description_code, languageConceptOptions));
+        }
+        return new Codelist(conceptOptions);
+    }
+
+    /**
+     * Class which stores options (codelist values) for a concept
+     * This is basically the contents of an Excel codelist worksheet, e.g. line 2.
+     * 1. value_en	description_en	codesystem	        code	description_code
+     * 2. value1	description1	snki-codesystem-1	1	    The description from the ontology for code 1
+     */
+    static class ConceptOption {
+        final String codesystemName;
+        final String code;
+        final String description_code;
+        private final List<LanguageConceptOptions> languageConceptOptionsList;
+
+        /**
+         * constructor
+         * @param codesystemName         name of the codesystem for the option
+         * @param code                   code for the option
+         * @param description_code       description of the code
+         * @param languageConceptOptions the value and description of the option for each language
+         */
+        private ConceptOption(String codesystemName, String code, String description_code, Collection<LanguageConceptOptions> languageConceptOptions){
+            this.code = code;
+            this.codesystemName = codesystemName;
+            this.description_code = description_code;
+            this.languageConceptOptionsList = List.copyOf(languageConceptOptions);
+        }
+
+        /**
+         * returns the language specific values and descriptions of this option
+         * @return unmodifiable list with the language specific values and descriptions
+         */
+        List<LanguageConceptOptions> getLanguageConceptOptions(){
+            return languageConceptOptionsList;
+        }
+    }
+
+    /**
+     * class for the language concept options, e.g. for English, line 2.
+     * 1. value_en	description_en
+     * 2. value1	description1
+     */
+    static class LanguageConceptOptions{
+        final String language;
+        final String value;
+        final String description;
+
+        /**
+         * constructor
+         * @param language    the language
+         * @param value       the value in that language
+         * @param description the description in that language
+         */
+        private LanguageConceptOptions(String language, String value, String description){
+            this.description = description;
+            this.language = language;
+            this.value = value;
+        }
+    }
+}
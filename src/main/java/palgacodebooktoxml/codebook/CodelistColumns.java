@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import palgacodebooktoxml.utils.SheetHeader;
+
+import java.util.Set;
+
+/**
+ * Column indexes of a codelist sheet, resolved once from the sheet's header
+ */
+class CodelistColumns {
+    final String codelist_ref;
+    final int codesystem;
+    final int code;
+    final int description_code;
+
+    // languages and the index of the description and value columns for each language
+    final String [] languages;
+    final int [] description;
+    final int [] value;
+
+    /**
+     * resolve the columns of a codelist sheet
+     * @param sheetHeader header of the sheet
+     * @param languages   languages for which the descriptions and values are needed
+     */
+    CodelistColumns(SheetHeader sheetHeader, Set<String> languages){
+        codelist_ref = sheetHeader.getSheetName();
+        code = sheetHeader.getColumnIndex("code");
+        description_code = sheetHeader.getColumnIndex("description_code");
+        codesystem = sheetHeader.getColumnIndex("codesystem");
+
+        this.languages = languages.toArray(new String[0]);
+        description = new int[this.languages.length];
+        value = new int[this.languages.length];
+        for(int i=0; i<this.languages.length; i++){
+            description[i] = sheetHeader.getColumnIndex("description_"+this.languages[i]);
+            value[i] = sheetHeader.getColumnIndex("value_"+this.languages[i]);
+        }
+    }
+}
@@ -24,11 +24,12 @@ import palgacodebooktoxml.artdecor.ArtDecorValueSet;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.poi.ss.usermodel.Row;
 import palgacodebooktoxml.settings.IdentifierManager;
 import palgacodebooktoxml.settings.Statics;
-import palgacodebooktoxml.utils.ExcelUtils;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -50,7 +51,7 @@ class Concept {
     private final String versionLabel;
     private final String statusCode;
     private final Map<String, LanguageConcept> languageConceptMap = new HashMap<>();
-    private final Map<String, ConceptOption> conceptOptionsMap = new HashMap<>();
+    private Codelist codelist;
     private final Map<String, String> propertiesMap = new HashMap<>();
 
     /**
@@ -98,72 +99,34 @@ class Concept {
     }
 
     /**
-     * validates whether the entry is valid
-     * @param codeListEntryCodesystem       codelist entry's codesystem
-     * @param codeListEntryCode             codelist entry's code
-     * @param codeListEntryDescription_code codelist entry's code description
-     * @param codelist_ref                  reference to the codelist's worksheet
-     * @return true/false
+     * sets the codelist of the concept. The codelist is shared with the other concepts referring to the same worksheet
+     * @param codelist the codelist
      */
-    private boolean isValidEntry(String codeListEntryCodesystem, String codeListEntryCode, String codeListEntryDescription_code, String codelist_ref){
-        boolean isValidEntry=true;
-        if(Statics.mayBeTypo(codesystem)){
-            logger.log(Level.WARN, "codebook version: {}; Codelist Entry: Codesystem found: {} in sheet {}. Did you mean {}?", versionLabel, codesystem, codelist_ref, Statics.getTypoValue(codesystem));
-            isValidEntry = false;
-        }
-
-        // first check whether one of the mandatory fields is empty
-        if(codeListEntryCode.equalsIgnoreCase("")){
-            logger.log(Level.ERROR, "codebook version: {}; Codelist Entry: Mandatory code missing in codelist {} for concept {}", versionLabel, codelist_ref, id);
-            isValidEntry = false;
-        }
-        if(codeListEntryCodesystem.equalsIgnoreCase("")){
-            logger.log(Level.ERROR, "codebook version: {}; Codelist Entry: Mandatory codesystem missing in codelist {} for concept {}", versionLabel, codelist_ref, id);
-            isValidEntry = false;
-        }
-        if(codeListEntryDescription_code.equalsIgnoreCase("")){
-            logger.log(Level.ERROR, "codebook version: {}; Codelist Entry: Mandatory code description missing in codelist {} for concept {}", versionLabel, codelist_ref, id);
-            isValidEntry = false;
-        }
-        return isValidEntry;
+    void setCodelist(Codelist codelist){
+        this.codelist = codelist;
     }
 
     /**
-     * adds a codelist entry to the concept object, which represent a single concept in the Excel codebook
-     * the codelist entry is basically the row we found by taking the codelist_ref for the concept, open the
-     * appropriate worksheet and loop over the codelist rows
-     * @param row                row in the codelist
-     * @param codelistHeaderList codelist header
-     * @param languages          languages which should be added
-     * @param codelist_ref       reference to the codelist sheet
+     * returns the ART-DECOR ValueSet for the concept's codelist. Concepts sharing a codelist share the ValueSet,
+     * which is created for the first of them
+     * @return the valueset
      */
-    void addCodeListEntry(Row row, List<String> codelistHeaderList, Set<String> languages, String codelist_ref){
-        String codeListEntryCode = ExcelUtils.getValue(row, "code", codelistHeaderList);
-        String codeListEntryDescription_code = ExcelUtils.getValue(row, "description_code", codelistHeaderList);
-        String codeListEntryCodesystem = ExcelUtils.getValue(row, "codesystem", codelistHeaderList);
-
-        if(isValidEntry(codeListEntryCodesystem, codeListEntryCode, codeListEntryDescription_code, codelist_ref)){
-            // create a ConceptOption object for this entry, based on the codesystem, the code within the codesystem and the description of that code.
-            ConceptOption conceptOption = new ConceptOption(codeListEntryCodesystem, codeListEntryCode, codeListEntryDescription_code);
-            // get the language-specific description and value
-            for (String language : languages) {
-                String languageDescription = ExcelUtils.getValue(row, "description_" + language, codelistHeaderList);
-                String languageValue = ExcelUtils.getValue(row, "value_" + language, codelistHeaderList);
-                // add them as languageConceptOptions
-                conceptOption.addLanguageConceptOptions(language, languageValue, languageDescription);
-            }
-            // add the conceptOption to this concept's conceptOptionsMap
-            conceptOptionsMap.put(conceptOption.code, conceptOption);
+    ArtDecorValueSet generateArtDecorValueSet(){
+        ArtDecorValueSet artDecorValueSet = codelist.getArtDecorValueSet();
+        if(artDecorValueSet==null){
+            artDecorValueSet = createArtDecorValueSet();
+            codelist.setArtDecorValueSet(artDecorValueSet);
         }
+        return artDecorValueSet;
     }
 
     /**
      * creates an ART-DECOR ValueSet
      * @return the newly created valueset
      */
-    ArtDecorValueSet generateArtDecorValueSet(){
+    private ArtDecorValueSet createArtDecorValueSet(){
         ArtDecorValueSet artDecorValueSet = new ArtDecorValueSet(id, id, versionLabel, effectiveDate);
-        for(ConceptOption conceptOption:conceptOptionsMap.values()){
+        for(Codelist.ConceptOption conceptOption:codelist.getConceptOptions()){
             String codesystemName = conceptOption.codesystemName;
             String codesystemId = IdentifierManager.getIdentifierManager().getCodeSystemId(codesystemName, effectiveDate);
             boolean addToExceptionList = Statics.isExceptionCodeList(codesystemId);
@@ -175,16 +138,11 @@ class Concept {
                     addToExceptionList);
 
             // add the concept's language specific options
-//            conceptOption.addValueSetDesignations(artDecorValueSet, addToExceptionList);
-
-            Collection<LanguageConceptOptions> collection = conceptOption.getLanguageConceptOptions();
-            for(LanguageConceptOptions languageConceptOptions:collection){
+            for(Codelist.LanguageConceptOptions languageConceptOptions:conceptOption.getLanguageConceptOptions()){
                 artDecorValueSet.addConceptDesignation(languageConceptOptions.language, languageConceptOptions.description, addToExceptionList);
             }
-
         }
 
-
         for(LanguageConcept languageConcept:languageConceptMap.values()){
             String language = languageConcept.language;
             artDecorValueSet.addConceptLanguageValueSet(language, Statics.getOptionsInLanguage(language)+" "+languageConcept.description);
@@ -199,20 +157,22 @@ class Concept {
      * @return the generate ART-DECOR concept
      */
     ArtDecorConcept generateArtDecorConcept(String artdecorConceptId){
+        Map<String, String> languageDescriptions = new HashMap<>();
+        for(LanguageConcept languageConcept:languageConceptMap.values()){
+            languageDescriptions.put(languageConcept.language, languageConcept.description);
+        }
+
         ArtDecorConcept artDecorConcept;
-        if(conceptOptionsMap.size()>0){
+        if(hasConceptOptions()){
             String type = "code";
-            artDecorConcept = new ArtDecorConcept(id, artdecorConceptId, effectiveDate, type, parent, statusCode);
+            artDecorConcept = new ArtDecorConcept(id, artdecorConceptId, effectiveDate, type, parent, statusCode, languageDescriptions);
         }
         else{
             String type = Statics.getArtDecorValueDomainType(data_type);
-            artDecorConcept = new ArtDecorConcept(id, artdecorConceptId, effectiveDate, type, parent, statusCode);
+            artDecorConcept = new ArtDecorConcept(id, artdecorConceptId, effectiveDate, type, parent, statusCode, languageDescriptions);
         }
 
         artDecorConcept.setPropertyMap(propertiesMap);
-        for(LanguageConcept languageConcept:languageConceptMap.values()){
-            artDecorConcept.addLanguageConcept(languageConcept.language, languageConcept.description);
-        }
         return artDecorConcept;
     }
 
@@ -263,7 +223,7 @@ class Concept {
      * @return true/false
      */
     boolean hasConceptOptions(){
-        return conceptOptionsMap.size()>0;
+        return codelist!=null && codelist.hasOptions();
     }
 
     /**
@@ -282,100 +242,74 @@ class Concept {
     }
 
     /**
-     * Class which stores a language with the description of the codebook in that language
+     * writes the concept in the binary form used by the codebook cache
+     * the effective date, version label and status code are those of the codebook and are not written
+     * @param dataOutputStream the stream
+     * @param codelistIndexMap position of each of the codebook's codelists
+     * @throws IOException
      */
-    private static class LanguageConcept{
-        private final String language;
-        private final String description;
-
-        LanguageConcept(String language, String description){
-            this.description = description;
-            this.language = language;
+    void writeTo(DataOutputStream dataOutputStream, Map<Codelist, Integer> codelistIndexMap) throws IOException {
+        CodebookCache.writeString(dataOutputStream, id);
+        CodebookCache.writeString(dataOutputStream, codesystem);
+        CodebookCache.writeString(dataOutputStream, code);
+        CodebookCache.writeString(dataOutputStream, description_code);
+        CodebookCache.writeString(dataOutputStream, codelist_ref);
+        CodebookCache.writeString(dataOutputStream, parent);
+        CodebookCache.writeString(dataOutputStream, data_type);
+
+        Map<String, String> languageDescriptionMap = new LinkedHashMap<>();
+        for(LanguageConcept languageConcept:languageConceptMap.values()){
+            languageDescriptionMap.put(languageConcept.language, languageConcept.description);
         }
+        CodebookCache.writeStringMap(dataOutputStream, languageDescriptionMap);
+        CodebookCache.writeStringMap(dataOutputStream, propertiesMap);
+        dataOutputStream.writeInt(codelist==null ? -1 : codelistIndexMap.get(codelist));
     }
 
     /**
-     * Class which stores options (codelist values) for a concept
-     * This is basically the contents of an Excel codelist worksheet, e.g. line 2.
-     * 1. value_en	description_en	codesystem	        code	description_code
-     * 2. value1	description1	snki-codesystem-1	1	    The description from the ontology for code 1
+     * reads a concept written by writeTo
+     * @param dataInputStream the stream
+     * @param codelistList    the codebook's codelists, by position
+     * @param effectiveDate   effective date of the codebook
+     * @param versionLabel    version label of the codebook
+     * @param statusCode      status code of the concept
+     * @return the concept
+     * @throws IOException
      */
-    private class ConceptOption {
-        private final String codesystemName;
-        private final String code;
-        private final String description_code;
-        private final Map<String, LanguageConceptOptions> languageConceptOptionsMap = new HashMap<>();
-
-        /**
-         * constructor
-         * @param codesystemName   name of the codesystem for the option
-         * @param code             code for the option
-         * @param description_code description of the code
-         */
-        ConceptOption(String codesystemName, String code, String description_code){
-            this.code = code;
-            this.codesystemName = codesystemName;
-            this.description_code = description_code;
-        }
-
-
-//        private void addLanguageConceptOptions(String language, LanguageConceptOptions languageConceptOptions){
-//            languageConceptOptionsMap.put(language, languageConceptOptions);
-//        }
-
-        /**
-         * adds the value and description of a codelist entry for a certain language, e.g. for English, line 2.
-         * 1. value_en	description_en
-         * 2. value1	description1
-         * @param language            the language
-         * @param languageValue       the value in that language
-         * @param languageDescription the description in that language
-         */
-        private void addLanguageConceptOptions(String language, String languageValue, String languageDescription){
-            LanguageConceptOptions languageConceptOptions = new LanguageConceptOptions(language, languageValue, languageDescription);
-            languageConceptOptionsMap.put(language, languageConceptOptions);
+    static Concept readFrom(DataInputStream dataInputStream, List<Codelist> codelistList, String effectiveDate, String versionLabel, String statusCode) throws IOException {
+        String id = CodebookCache.readString(dataInputStream);
+        String codesystem = CodebookCache.readString(dataInputStream);
+        String code = CodebookCache.readString(dataInputStream);
+        String description_code = CodebookCache.readString(dataInputStream);
+        String codelist_ref = CodebookCache.readString(dataInputStream);
+        String parent = CodebookCache.readString(dataInputStream);
+        String data_type = CodebookCache.readString(dataInputStream);
+        Concept concept = new Concept(id, codesystem, code, description_code, "", codelist_ref, parent, data_type, effectiveDate, versionLabel, statusCode);
+
+        Map<String, String> languageDescriptionMap = new LinkedHashMap<>();
+        CodebookCache.readStringMap(dataInputStream, languageDescriptionMap);
+        for(Map.Entry<String, String> entry:languageDescriptionMap.entrySet()){
+            concept.addLanguageConcept(entry.getKey(), entry.getValue());
         }
+        CodebookCache.readStringMap(dataInputStream, concept.propertiesMap);
 
-
-        private void addValueSetDesignations(ArtDecorValueSet artDecorValueSet, boolean addToExceptionList){
-            for(LanguageConceptOptions languageConceptOptions:languageConceptOptionsMap.values()){
-                artDecorValueSet.addConceptDesignation(languageConceptOptions.language, languageConceptOptions.description, addToExceptionList);
-            }
-        }
-
-        /**
-         * returns all the conceptOptions from the map
-         * @return all the conceptOptions from the map
-         */
-        Collection<LanguageConceptOptions> getLanguageConceptOptions(){
-            return languageConceptOptionsMap.values();
+        int codelistIndex = dataInputStream.readInt();
+        if(codelistIndex!=-1){
+            concept.setCodelist(codelistList.get(codelistIndex));
         }
+        return concept;
     }
 
     /**
-     * class for the language concept options
+     * Class which stores a language with the description of the codebook in that language
      */
-    private static class LanguageConceptOptions{
+    private static class LanguageConcept{
         private final String language;
-        private final String value;
         private final String description;
 
-        /**
-         * constructor
-         * @param language    the language
-         * @param value       the value in that language
-         * @param description the description in that language
-         */
-        LanguageConceptOptions(String language, String value, String description){
+        LanguageConcept(String language, String description){
             this.description = description;
             this.language = language;
-            this.value = value;
         }
     }
-
-
 }
-
-
-
-
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import palgacodebooktoxml.utils.SheetHeader;
+
+import java.util.Set;
+
+/**
+ * Column indexes of the Codebook sheet, resolved once from the sheet's header
+ */
+class ConceptColumns {
+    final int id;
+    final int codesystem;
+    final int code;
+    final int description_code;
+    final int codelist_ref;
+    final int properties;
+    final int parent;
+    final int data_type;
+
+    // languages and the index of the description column for each language
+    final String [] languages;
+    final int [] description;
+
+    /**
+     * resolve the columns of the Codebook sheet
+     * @param sheetHeader header of the sheet
+     * @param languages   languages for which the descriptions are needed
+     */
+    ConceptColumns(SheetHeader sheetHeader, Set<String> languages){
+        id = sheetHeader.getColumnIndex("id");
+        codesystem = sheetHeader.getColumnIndex("codesystem");
+        code = sheetHeader.getColumnIndex("code");
+        description_code = sheetHeader.getColumnIndex("description_code");
+        codelist_ref = sheetHeader.getColumnIndex("codelist_ref");
+        properties = sheetHeader.getColumnIndex("properties");
+        parent = sheetHeader.getColumnIndex("parent");
+        data_type = sheetHeader.getColumnIndex("data_type");
+
+        this.languages = languages.toArray(new String[0]);
+        description = new int[this.languages.length];
+        for(int i=0; i<this.languages.length; i++){
+            description[i] = sheetHeader.getColumnIndex("description_"+this.languages[i]);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder events of a conversion run, which show where the time goes in a recording
+ *
+ * The events follow the usual pattern: the event is created and begun before the work and only filled in and
+ * committed if shouldCommit returns true. When no recording is running, shouldCommit is false and the JIT compiler
+ * removes the event object, so the events cost nothing.
+ */
+final class ConversionEvents {
+    private static final String CATEGORY = "PALGA Codebook to XML";
+
+    private ConversionEvents(){}
+
+    @Name("palgacodebooktoxml.CodebookRead")
+    @Label("Codebook Read")
+    @Description("Reading a codebook, from the Excel file or from the codebook cache")
+    @Category({CATEGORY, "Reading"})
+    static class CodebookReadEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Version Label")
+        String versionLabel;
+        @Label("Taken From Cache")
+        boolean fromCache;
+        @Label("Concepts")
+        int concepts;
+    }
+
+    @Name("palgacodebooktoxml.SheetParse")
+    @Label("Sheet Parse")
+    @Description("Parsing the Info or Codebook worksheet of a codebook")
+    @Category({CATEGORY, "Reading"})
+    static class SheetParseEvent extends Event {
+        @Label("Sheet")
+        String sheet;
+        @Label("Version Label")
+        String versionLabel;
+        @Label("Rows")
+        long rows;
+    }
+
+    @Name("palgacodebooktoxml.CodelistParse")
+    @Label("Codelist Parse")
+    @Description("Parsing the worksheet of a codelist, the first time it is referenced by a concept")
+    @Category({CATEGORY, "Reading"})
+    static class CodelistParseEvent extends Event {
+        @Label("Codelist")
+        String codelist;
+        @Label("Version Label")
+        String versionLabel;
+        @Label("Concept Id")
+        String conceptId;
+        @Label("Options")
+        int options;
+    }
+
+    @Name("palgacodebooktoxml.VersionTransform")
+    @Label("Version Transform")
+    @Description("Transforming the codebook of a version to an ART-DECOR dataset")
+    @Category({CATEGORY, "Transforming"})
+    static class VersionTransformEvent extends Event {
+        @Label("Version Label")
+        String versionLabel;
+        @Label("Concepts")
+        int concepts;
+        @Label("New Value Sets")
+        int newValueSets;
+    }
+
+    @Name("palgacodebooktoxml.ValueSetComparison")
+    @Label("Value Set Comparison")
+    @Description("Comparing the value set of a concept with the value set of the same codelist in an earlier version")
+    @Category({CATEGORY, "Transforming"})
+    static class ValueSetComparisonEvent extends Event {
+        @Label("Version Label")
+        String versionLabel;
+        @Label("Concept Id")
+        String conceptId;
+        @Label("Codelist")
+        String codelist;
+        @Label("Options")
+        int options;
+        @Label("Same Values")
+        boolean same;
+    }
+
+    @Name("palgacodebooktoxml.SectionRender")
+    @Label("Section Render")
+    @Description("Writing a section of the DECOR XML, e.g. the project, a dataset or the terminology")
+    @Category({CATEGORY, "Writing"})
+    static class SectionRenderEvent extends Event {
+        @Label("Section")
+        String section;
+        @Label("Version Label")
+        String versionLabel;
+    }
+}
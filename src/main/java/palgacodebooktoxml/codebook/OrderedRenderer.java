@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import palgacodebooktoxml.utils.FragmentWriter;
+import palgacodebooktoxml.utils.Utf8FileWriter;
+
+import java.io.Closeable;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Renders parts of the output on a pool of threads and appends them to the output in the order in which they were
+ * added
+ *
+ * Each part is rendered into its own fragment, which is kept in memory or spilled to a temporary file when it gets
+ * large. Only as many parts as the pool has threads are rendered ahead of the output; the other parts wait until
+ * a fragment has been appended, so the output cannot fall far behind.
+ */
+class OrderedRenderer implements Closeable {
+    private final ExecutorService renderPool;
+    private final Path fragmentDirectory;
+    private final int fragmentMemoryLimit;
+    private final int maxRendering;
+    // the parts being rendered, in output order, followed by the parts waiting for a thread
+    private final Deque<Future<FragmentWriter>> renderingParts = new ArrayDeque<>();
+    private final Deque<Part> waitingParts = new ArrayDeque<>();
+
+    /**
+     * a part of the output
+     */
+    interface Part {
+        /**
+         * writes the XML of the part
+         * @param writer the writer for the part
+         * @throws Exception
+         */
+        void render(Writer writer) throws Exception;
+    }
+
+    /**
+     * create the renderer
+     * @param renderPool          the threads which render the parts
+     * @param renderThreads       the number of threads in the pool
+     * @param fragmentDirectory   directory for the fragments which are spilled to a temporary file
+     * @param fragmentMemoryLimit the number of characters of a fragment kept in memory
+     */
+    OrderedRenderer(ExecutorService renderPool, int renderThreads, Path fragmentDirectory, int fragmentMemoryLimit){
+        this.renderPool = renderPool;
+        this.maxRendering = renderThreads;
+        this.fragmentDirectory = fragmentDirectory;
+        this.fragmentMemoryLimit = fragmentMemoryLimit;
+    }
+
+    /**
+     * adds a part, which is rendered as soon as a thread is available
+     * @param part the part
+     */
+    void add(Part part){
+        waitingParts.add(part);
+        submitWaitingParts();
+    }
+
+    /**
+     * returns the number of parts which have not been appended yet
+     * @return the number of parts
+     */
+    int size(){
+        return renderingParts.size()+waitingParts.size();
+    }
+
+    /**
+     * hands waiting parts to the pool while fewer parts than threads are being rendered
+     */
+    private void submitWaitingParts(){
+        while (!waitingParts.isEmpty() && renderingParts.size()<maxRendering) {
+            Part part = waitingParts.remove();
+            renderingParts.add(renderPool.submit(() -> render(part)));
+        }
+    }
+
+    /**
+     * renders a part into a fragment
+     * @param part the part
+     * @return the fragment
+     * @throws Exception
+     */
+    private FragmentWriter render(Part part) throws Exception {
+        FragmentWriter fragmentWriter = new FragmentWriter(fragmentDirectory, fragmentMemoryLimit);
+        try {
+            part.render(fragmentWriter);
+            fragmentWriter.close();
+            return fragmentWriter;
+        } catch (Exception e){
+            fragmentWriter.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * waits until the oldest part is rendered and appends it to the output
+     * @param writer the writer for the output
+     * @throws Exception
+     */
+    void appendNext(Utf8FileWriter writer) throws Exception {
+        FragmentWriter fragmentWriter = waitFor(renderingParts.remove());
+        // the next part is rendered while this one is appended
+        submitWaitingParts();
+        fragmentWriter.transferTo(writer);
+    }
+
+    /**
+     * appends all remaining parts to the output
+     * @param writer the writer for the output
+     * @throws Exception
+     */
+    void appendAll(Utf8FileWriter writer) throws Exception {
+        while (size()>0) {
+            appendNext(writer);
+        }
+    }
+
+    /**
+     * drops the parts which have not been appended, waiting for the parts being rendered so their temporary files
+     * can be deleted
+     */
+    @Override
+    public void close(){
+        waitingParts.clear();
+        while (!renderingParts.isEmpty()) {
+            try {
+                renderingParts.remove().get().delete();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // the part failed, or its fragment could not be deleted; the first problem has been reported already
+            }
+        }
+    }
+
+    /**
+     * waits until a task is finished, passing on the exception if it failed
+     * @param future the task
+     * @param <T>    the result of the task
+     * @return the result
+     * @throws Exception
+     */
+    static <T> T waitFor(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Collects timings and counters of a conversion run, for the run as a whole and per codebook version
+ *
+ * A phase is measured on the thread that does the work, so besides the wall time the CPU time and the bytes
+ * allocated by that thread are known. Measuring the same phase more than once (e.g. every codelist of a version)
+ * adds up the measurements.
+ * At the end of the run the report is written as JSON and summarised in the log.
+ */
+class RunReport {
+    private static final Logger logger = LogManager.getLogger(RunReport.class.getName());
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final Statistics runStatistics = new Statistics();
+    private final Map<Double, Statistics> versionStatisticsMap = new TreeMap<>();
+
+    /**
+     * starts measuring a phase on the current thread
+     * @return the measurement, to be passed to addMeasurement when the phase is done
+     */
+    Measurement startMeasurement(){
+        return new Measurement();
+    }
+
+    /**
+     * adds a phase of the run as a whole, which was measured on the current thread
+     * @param phase       name of the phase
+     * @param measurement the measurement started at the beginning of the phase
+     */
+    synchronized void addMeasurement(String phase, Measurement measurement){
+        runStatistics.add(phase, measurement);
+    }
+
+    /**
+     * adds a phase of a version, which was measured on the current thread
+     * @param version     the codebook version
+     * @param phase       name of the phase
+     * @param measurement the measurement started at the beginning of the phase
+     */
+    synchronized void addMeasurement(double version, String phase, Measurement measurement){
+        getVersionStatistics(version).add(phase, measurement);
+    }
+
+    /**
+     * adds to a counter of a version
+     * @param version the codebook version
+     * @param counter name of the counter
+     * @param amount  the amount to add
+     */
+    synchronized void count(double version, String counter, long amount){
+        getVersionStatistics(version).counterMap.merge(counter, amount, Long::sum);
+    }
+
+    private Statistics getVersionStatistics(double version){
+        return versionStatisticsMap.computeIfAbsent(version, key -> new Statistics());
+    }
+
+    /**
+     * writes the report as JSON
+     * @param file the file to write to
+     * @throws IOException
+     */
+    synchronized void writeJSON(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{\n  \"run\": ");
+            runStatistics.writeJSON(writer, "  ");
+            writer.write(",\n  \"versions\": [");
+            String separator = "\n";
+            for(Map.Entry<Double, Statistics> entry:versionStatisticsMap.entrySet()){
+                writer.write(separator+"    {\n      \"version\": \""+entry.getKey()+"\",\n      \"statistics\": ");
+                entry.getValue().writeJSON(writer, "      ");
+                writer.write("\n    }");
+                separator = ",\n";
+            }
+            writer.write("\n  ]\n}\n");
+        }
+    }
+
+    /**
+     * returns the statistics of the versions as a table, with a row per version and a column for the wall time of
+     * each phase and for each counter
+     * @return the header followed by the rows
+     */
+    synchronized List<List<String>> getVersionTable(){
+        Set<String> phases = new LinkedHashSet<>();
+        Set<String> counters = new LinkedHashSet<>();
+        for(Statistics statistics:versionStatisticsMap.values()){
+            phases.addAll(statistics.phaseStatisticsMap.keySet());
+            counters.addAll(statistics.counterMap.keySet());
+        }
+
+        List<List<String>> table = new ArrayList<>();
+        List<String> header = new ArrayList<>();
+        header.add("version");
+        phases.forEach(phase -> header.add(phase+" (ms)"));
+        header.addAll(counters);
+        table.add(header);
+        for(Map.Entry<Double, Statistics> entry:versionStatisticsMap.entrySet()){
+            Statistics statistics = entry.getValue();
+            List<String> row = new ArrayList<>();
+            row.add(String.valueOf(entry.getKey()));
+            for(String phase:phases){
+                PhaseStatistics phaseStatistics = statistics.phaseStatisticsMap.get(phase);
+                row.add(phaseStatistics==null ? "" : String.valueOf(Statistics.toMillis(phaseStatistics.wallNanos)));
+            }
+            for(String counter:counters){
+                row.add(String.valueOf(statistics.counterMap.getOrDefault(counter, 0L)));
+            }
+            table.add(row);
+        }
+        return table;
+    }
+
+    /**
+     * logs a summary of the report, one line for the run and one per version
+     */
+    synchronized void logSummary(){
+        logger.log(Level.INFO, "Run: {}", runStatistics);
+        for(Map.Entry<Double, Statistics> entry:versionStatisticsMap.entrySet()){
+            logger.log(Level.INFO, "Codebook version {}: {}", entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * the state of the current thread at the start of a phase
+     */
+    static class Measurement {
+        private final long wallNanos;
+        private final long cpuNanos;
+        private final long allocatedBytes;
+        private final Thread thread;
+
+        private Measurement(){
+            this.thread = Thread.currentThread();
+            this.wallNanos = System.nanoTime();
+            this.cpuNanos = getCpuNanos();
+            this.allocatedBytes = getAllocatedBytes();
+        }
+
+        /**
+         * returns the CPU time used by the current thread, or -1 if the JVM cannot measure it
+         * @return the CPU time in nanoseconds
+         */
+        private static long getCpuNanos(){
+            return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : -1;
+        }
+
+        /**
+         * returns the number of bytes allocated by the current thread, or -1 if the JVM cannot measure it
+         * @return the number of bytes
+         */
+        private static long getAllocatedBytes(){
+            if(threadMXBean instanceof com.sun.management.ThreadMXBean){
+                com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+                if(sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                    return sunThreadMXBean.getCurrentThreadAllocatedBytes();
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * the totals of a single phase
+     */
+    private static class PhaseStatistics {
+        private long count;
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+
+        private void add(Measurement measurement){
+            if(measurement.thread!=Thread.currentThread()){
+                throw new IllegalStateException("A phase must be measured on a single thread");
+            }
+            count++;
+            wallNanos += System.nanoTime()-measurement.wallNanos;
+            // once a value could not be measured, the total is unknown
+            long cpu = Measurement.getCpuNanos();
+            cpuNanos = cpuNanos<0 || measurement.cpuNanos<0 ? -1 : cpuNanos+cpu-measurement.cpuNanos;
+            long allocated = Measurement.getAllocatedBytes();
+            allocatedBytes = allocatedBytes<0 || measurement.allocatedBytes<0 ? -1 : allocatedBytes+allocated-measurement.allocatedBytes;
+        }
+    }
+
+    /**
+     * the phases and counters of the run or of a version, in the order in which they were first added
+     */
+    private static class Statistics {
+        private final Map<String, PhaseStatistics> phaseStatisticsMap = new LinkedHashMap<>();
+        private final Map<String, Long> counterMap = new LinkedHashMap<>();
+
+        private void add(String phase, Measurement measurement){
+            phaseStatisticsMap.computeIfAbsent(phase, key -> new PhaseStatistics()).add(measurement);
+        }
+
+        private void writeJSON(Writer writer, String indent) throws IOException {
+            writer.write("{\n"+indent+"  \"phases\": {");
+            String separator = "\n";
+            for(Map.Entry<String, PhaseStatistics> entry:phaseStatisticsMap.entrySet()){
+                PhaseStatistics phaseStatistics = entry.getValue();
+                writer.write(separator+indent+"    \""+entry.getKey()+"\": {\"count\": "+phaseStatistics.count+
+                        ", \"wallMillis\": "+toMillis(phaseStatistics.wallNanos)+
+                        ", \"cpuMillis\": "+toMillis(phaseStatistics.cpuNanos)+
+                        ", \"allocatedBytes\": "+phaseStatistics.allocatedBytes+"}");
+                separator = ",\n";
+            }
+            writer.write("\n"+indent+"  },\n"+indent+"  \"counters\": {");
+            separator = "\n";
+            for(Map.Entry<String, Long> entry:counterMap.entrySet()){
+                writer.write(separator+indent+"    \""+entry.getKey()+"\": "+entry.getValue());
+                separator = ",\n";
+            }
+            writer.write("\n"+indent+"  }\n"+indent+"}");
+        }
+
+        @Override
+        public String toString(){
+            StringJoiner stringJoiner = new StringJoiner("; ");
+            for(Map.Entry<String, PhaseStatistics> entry:phaseStatisticsMap.entrySet()){
+                PhaseStatistics phaseStatistics = entry.getValue();
+                stringJoiner.add(entry.getKey()+" "+toMillis(phaseStatistics.wallNanos)+" ms (cpu "+toMillis(phaseStatistics.cpuNanos)+
+                        " ms, "+(phaseStatistics.allocatedBytes<0 ? -1 : phaseStatistics.allocatedBytes/(1024*1024))+" MB allocated)");
+            }
+            for(Map.Entry<String, Long> entry:counterMap.entrySet()){
+                stringJoiner.add(entry.getKey()+" "+entry.getValue());
+            }
+            return stringJoiner.toString();
+        }
+
+        private static long toMillis(long nanos){
+            return nanos<0 ? -1 : nanos/1_000_000;
+        }
+    }
+}
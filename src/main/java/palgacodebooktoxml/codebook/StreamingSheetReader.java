@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import palgacodebooktoxml.utils.ExcelUtils;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads a codebook using the XSSF event model
+ * Worksheets are parsed with SAX when they are requested, so only the shared strings and styles are kept in memory
+ */
+class StreamingSheetReader implements CodebookSheetReader {
+    private final OPCPackage opcPackage;
+    private final StylesTable stylesTable;
+    private final ReadOnlySharedStringsTable sharedStringsTable;
+    private final DataFormatter dataFormatter = new RawNumberFormatter();
+
+    // worksheet name --> package part of the worksheet; Excel sheet names are case insensitive
+    private final Map<String, PackagePart> sheetPartMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * opens the Excel file and registers the worksheets it contains
+     * @param path the Excel codebook file
+     * @throws IOException
+     */
+    StreamingSheetReader(Path path) throws IOException {
+        try {
+            opcPackage = OPCPackage.open(path.toFile(), PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Problem opening "+path.getFileName()+": "+e.getMessage(), e);
+        }
+
+        try {
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            stylesTable = xssfReader.getStylesTable();
+            sharedStringsTable = new ReadOnlySharedStringsTable(opcPackage);
+
+            XSSFReader.SheetIterator sheetIterator = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            while(sheetIterator.hasNext()){
+                try (InputStream inputStream = sheetIterator.next()) {
+                    sheetPartMap.putIfAbsent(sheetIterator.getSheetName(), sheetIterator.getSheetPart());
+                }
+            }
+        } catch (OpenXML4JException | SAXException e) {
+            opcPackage.revert();
+            throw new IOException("Problem reading the workbook structure of "+path.getFileName()+": "+e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean hasSheet(String sheetName) {
+        return sheetPartMap.containsKey(sheetName);
+    }
+
+    @Override
+    public void readSheet(String sheetName, RowHandler rowHandler) throws IOException {
+        PackagePart sheetPart = sheetPartMap.get(sheetName);
+        try (InputStream inputStream = sheetPart.getInputStream()) {
+            XMLReader xmlReader = SAXHelper.newXMLReader();
+            xmlReader.setContentHandler(new XSSFSheetXMLHandler(stylesTable, sharedStringsTable, new SheetRowCollector(rowHandler), dataFormatter, false));
+            xmlReader.parse(new InputSource(inputStream));
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Problem reading sheet "+sheetName+": "+e.getMessage(), e);
+        } catch (UncheckedIOException e) {
+            // thrown by the rowHandler while the sheet was being parsed
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close() {
+        // the package was opened read-only, so there is nothing to save
+        opcPackage.revert();
+    }
+
+    /**
+     * formats numeric cells as the text Excel stores for them (e.g. 12345, not 12345.0), ignoring the number format,
+     * which is what the workbook reader returns when it converts a cell to a string
+     */
+    private static class RawNumberFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            return NumberToTextConverter.toText(value);
+        }
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+            return NumberToTextConverter.toText(value);
+        }
+    }
+
+    /**
+     * collects the cells of a row and passes the row on once it is complete
+     */
+    private static class SheetRowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowHandler rowHandler;
+        private List<String> values;
+        private int lastColumn;
+
+        SheetRowCollector(RowHandler rowHandler){
+            this.rowHandler = rowHandler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            values = new ArrayList<>();
+            lastColumn = -1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            // only pass rows which contain something
+            if(!ExcelUtils.isEmptyRow(values)) {
+                try {
+                    rowHandler.handleRow(rowNum, values);
+                } catch (IOException e) {
+                    // the SAX callbacks cannot throw checked exceptions; readSheet unwraps this again
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            // cells without a value are not reported, so pad the gap; a missing reference means the next column
+            int column = cellReference==null ? lastColumn+1 : new CellReference(cellReference).getCol();
+            while(values.size()<column){
+                values.add("");
+            }
+            values.add(formattedValue==null ? "" : formattedValue);
+            lastColumn = column;
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+    }
+}
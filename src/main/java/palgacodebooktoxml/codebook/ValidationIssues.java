@@ -0,0 +1,353 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import palgacodebooktoxml.utils.SheetHeader;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Collects the problems found while reading the codebooks
+ *
+ * An issue is identified by its rule, version, sheet, row, column and concept, so each bad row gives its own issue.
+ * When the same issue is found again, e.g. when a version is read from more than one codebook, only its count goes
+ * up. Only the first issues of each rule are logged; the number of issues which were not logged is given in the
+ * summary at the end of the run.
+ * Each codebook collects its own issues without logging them; they are added to the issues of the run when the
+ * codebook is read, also when it is taken from the codebook cache, which stores them with the codebook.
+ */
+class ValidationIssues {
+    private static final Logger logger = LogManager.getLogger(ValidationIssues.class.getName());
+
+    private final int logLimit;
+    private final Map<List<Object>, Issue> issueMap = new LinkedHashMap<>();
+    private final Map<Rule, Integer> loggedMap = new EnumMap<>(Rule.class);
+    private final Map<Rule, Long> ruleCountMap = new EnumMap<>(Rule.class);
+
+    /**
+     * the checks done while reading a codebook, with their severity and log message
+     * the message gets the version label, followed by the details of the issue
+     */
+    enum Rule {
+        MISSING_COLUMN(Level.ERROR, "Problem finding {} in the header of sheet {}"),
+        EFFECTIVE_DATE_FORMAT(Level.ERROR, "Severe Error: The effective date is not in the correct format {}"),
+        EFFECTIVE_DATE_MISSING(Level.WARN, "Warning: The Effectivedate is not available in the INFO sheet (yyyy-mm-dd). Setting it to today... "),
+        DUPLICATE_CONCEPT_ID(Level.ERROR, "Concept: The identifier in the codebook must be unique {}"),
+        CONCEPT_CODESYSTEM_TYPO(Level.WARN, "Concept: Codesystem found: {} for {}. Did you mean {}?"),
+        CONCEPT_CODE_MISSING(Level.ERROR, "Concept: Mandatory code missing for concept {}"),
+        CONCEPT_CODESYSTEM_MISSING(Level.ERROR, "Concept: Mandatory codesystem missing for concept {}"),
+        CONCEPT_DESCRIPTION_MISSING(Level.ERROR, "Concept: Mandatory code description missing for concept {}"),
+        CODELIST_MISSING(Level.ERROR, "Severe Error: Issue adding codelist, ref = {}"),
+        CODELIST_CODESYSTEM_TYPO(Level.WARN, "Codelist Entry: Codesystem found: {} in sheet {}. Did you mean {}?"),
+        CODELIST_CODE_MISSING(Level.ERROR, "Codelist Entry: Mandatory code missing in codelist {} row {}"),
+        CODELIST_CODESYSTEM_MISSING(Level.ERROR, "Codelist Entry: Mandatory codesystem missing in codelist {} row {}"),
+        CODELIST_DESCRIPTION_MISSING(Level.ERROR, "Codelist Entry: Mandatory code description missing in codelist {} row {}");
+
+        private final Level severity;
+        private final String message;
+
+        Rule(Level severity, String message){
+            this.severity = severity;
+            this.message = "codebook version: {}; "+message;
+        }
+
+        /**
+         * returns the severity of an issue found by this rule
+         * @return the severity
+         */
+        Level getSeverity(){
+            return severity;
+        }
+    }
+
+    /**
+     * create the collection
+     * @param logLimit the number of issues of each rule which are logged
+     */
+    ValidationIssues(int logLimit){
+        this.logLimit = logLimit;
+    }
+
+    /**
+     * records an issue and logs it the first time it is found, unless enough issues of the rule have been logged
+     * already
+     * @param rule         the rule which found the issue
+     * @param versionLabel version label of the codebook
+     * @param sheet        the sheet in which the issue was found
+     * @param row          the row in the sheet (as shown in Excel), or -1 if the issue is not about a row
+     * @param column       the column, or an empty string if the issue is not about a column
+     * @param conceptId    the concept, or an empty string if the issue is not about a concept
+     * @param details      the values for the log message of the rule, after the version label
+     */
+    void report(Rule rule, String versionLabel, String sheet, int row, String column, String conceptId, Object... details){
+        add(rule, versionLabel, sheet, row, column, conceptId, 1, details);
+    }
+
+    /**
+     * adds the issues of a codebook, logging them as if they were found again
+     * @param issues the issues of the codebook
+     */
+    void addAll(ValidationIssues issues){
+        for(Issue issue:issues.getIssues()){
+            add(issue.rule, issue.versionLabel, issue.sheet, issue.row, issue.column, issue.conceptId, issue.count, issue.details);
+        }
+    }
+
+    /**
+     * records an issue which was found one or more times and logs it if it is new, unless enough issues of the rule
+     * have been logged already
+     * @param rule         the rule which found the issue
+     * @param versionLabel version label of the codebook
+     * @param sheet        the sheet in which the issue was found
+     * @param row          the row in the sheet (as shown in Excel), or -1 if the issue is not about a row
+     * @param column       the column, or an empty string if the issue is not about a column
+     * @param conceptId    the concept, or an empty string if the issue is not about a concept
+     * @param count        the number of times the issue was found
+     * @param details      the values for the log message of the rule, after the version label
+     */
+    private void add(Rule rule, String versionLabel, String sheet, int row, String column, String conceptId, long count, Object [] details){
+        boolean log = false;
+        synchronized (this) {
+            List<Object> key = getKey(rule, String.valueOf(versionLabel), sheet, row, column, conceptId);
+            Issue issue = issueMap.get(key);
+            if(issue==null){
+                issue = new Issue(rule, String.valueOf(versionLabel), sheet, row, column, conceptId, details);
+                issue.count = count;
+                issueMap.put(key, issue);
+                // an issue is logged once, for the first time it was found
+                int logged = loggedMap.getOrDefault(rule, 0);
+                log = logged<logLimit;
+                if(log){
+                    loggedMap.put(rule, logged+1);
+                }
+            }
+            else{
+                issue.count += count;
+            }
+            ruleCountMap.merge(rule, count, Long::sum);
+        }
+
+        // only the issues which are logged are formatted
+        if(log){
+            logger.log(rule.severity, rule.message, getParameters(versionLabel, details));
+        }
+    }
+
+    /**
+     * returns the key which identifies an issue
+     * issues about a row get the row in their key, so an issue found on several rows is reported for each of them
+     * @param rule         the rule which found the issue
+     * @param versionLabel version label of the codebook
+     * @param sheet        the sheet in which the issue was found
+     * @param row          the row in the sheet, or -1 if the issue is not about a row
+     * @param column       the column, or an empty string if the issue is not about a column
+     * @param conceptId    the concept, or an empty string if the issue is not about a concept
+     * @return the key
+     */
+    private static List<Object> getKey(Rule rule, String versionLabel, String sheet, int row, String column, String conceptId){
+        if(row<0){
+            return List.of(rule, versionLabel, sheet, column, conceptId);
+        }
+        return List.of(rule, versionLabel, sheet, row, column, conceptId);
+    }
+
+    /**
+     * returns the values for the log message of a rule
+     * @param versionLabel version label of the codebook
+     * @param details      the details of the issue
+     * @return the version label followed by the details
+     */
+    private static Object [] getParameters(String versionLabel, Object [] details){
+        Object [] parameters = new Object[details.length+1];
+        parameters[0] = versionLabel;
+        System.arraycopy(details, 0, parameters, 1, details.length);
+        return parameters;
+    }
+
+    /**
+     * reports the columns which were needed, but are missing from the header of a sheet
+     * @param sheetHeader  the header of the sheet
+     * @param versionLabel version label of the codebook
+     */
+    void reportMissingColumns(SheetHeader sheetHeader, String versionLabel){
+        for(String column:sheetHeader.getMissingColumns()){
+            report(Rule.MISSING_COLUMN, versionLabel, sheetHeader.getSheetName(), 1, column, "", column, sheetHeader.getSheetName());
+        }
+    }
+
+    /**
+     * returns the issues found so far, in the order in which they were first found
+     * @return list with the issues
+     */
+    synchronized List<Issue> getIssues(){
+        return new ArrayList<>(issueMap.values());
+    }
+
+    /**
+     * writes the issues in the binary form used by the codebook cache
+     * the details are written as text, which gives the same log message
+     * @param dataOutputStream the stream
+     * @throws IOException
+     */
+    synchronized void writeTo(DataOutputStream dataOutputStream) throws IOException {
+        dataOutputStream.writeInt(issueMap.size());
+        for(Issue issue:issueMap.values()){
+            dataOutputStream.writeInt(issue.rule.ordinal());
+            CodebookCache.writeString(dataOutputStream, issue.versionLabel);
+            CodebookCache.writeString(dataOutputStream, issue.sheet);
+            dataOutputStream.writeInt(issue.row);
+            CodebookCache.writeString(dataOutputStream, issue.column);
+            CodebookCache.writeString(dataOutputStream, issue.conceptId);
+            dataOutputStream.writeLong(issue.count);
+            dataOutputStream.writeInt(issue.details.length);
+            for(Object detail:issue.details){
+                CodebookCache.writeString(dataOutputStream, String.valueOf(detail));
+            }
+        }
+    }
+
+    /**
+     * reads issues written by writeTo into this collection, without logging them
+     * @param dataInputStream the stream
+     * @throws IOException
+     */
+    synchronized void readFrom(DataInputStream dataInputStream) throws IOException {
+        Rule [] rules = Rule.values();
+        int issueCount = dataInputStream.readInt();
+        for(int i=0; i<issueCount; i++){
+            Rule rule = rules[dataInputStream.readInt()];
+            String versionLabel = CodebookCache.readString(dataInputStream);
+            String sheet = CodebookCache.readString(dataInputStream);
+            int row = dataInputStream.readInt();
+            String column = CodebookCache.readString(dataInputStream);
+            String conceptId = CodebookCache.readString(dataInputStream);
+            long count = dataInputStream.readLong();
+            Object [] details = new Object[dataInputStream.readInt()];
+            for(int j=0; j<details.length; j++){
+                details[j] = CodebookCache.readString(dataInputStream);
+            }
+
+            Issue issue = new Issue(rule, versionLabel, sheet, row, column, conceptId, details);
+            issue.count = count;
+            issueMap.put(getKey(rule, versionLabel, sheet, row, column, conceptId), issue);
+            ruleCountMap.merge(rule, count, Long::sum);
+        }
+    }
+
+    /**
+     * returns the number of issues found by each rule, counting every time an issue was found
+     * @return map with the number of issues per rule
+     */
+    synchronized Map<Rule, Long> getRuleCounts(){
+        return new EnumMap<>(ruleCountMap);
+    }
+
+    /**
+     * logs the number of issues of each rule, and how many of them were not logged
+     */
+    synchronized void logSummary(){
+        if(ruleCountMap.isEmpty()){
+            logger.log(Level.INFO, "Validation: no issues found");
+            return;
+        }
+        Map<Rule, Integer> issueCountMap = new EnumMap<>(Rule.class);
+        for(Issue issue:issueMap.values()){
+            issueCountMap.merge(issue.rule, 1, Integer::sum);
+        }
+        for(Map.Entry<Rule, Long> entry:ruleCountMap.entrySet()){
+            Rule rule = entry.getKey();
+            int notLogged = issueCountMap.get(rule)-loggedMap.getOrDefault(rule, 0);
+            logger.log(rule.severity, "Validation: {} {} issue(s){}", entry.getValue(), rule,
+                    notLogged>0 ? " ("+notLogged+" not logged, the log is limited to "+logLimit+" per check)" : "");
+        }
+    }
+
+    /**
+     * an issue found by a rule, with the row where it was found and the number of times it was found
+     */
+    static class Issue {
+        private final Rule rule;
+        private final String versionLabel;
+        private final String sheet;
+        private final int row;
+        private final String column;
+        private final String conceptId;
+        // the details of the first time the issue was found, for its message
+        private final Object [] details;
+        private long count = 1;
+
+        private Issue(Rule rule, String versionLabel, String sheet, int row, String column, String conceptId, Object [] details){
+            this.rule = rule;
+            this.versionLabel = versionLabel;
+            this.sheet = sheet;
+            this.row = row;
+            this.column = column;
+            this.conceptId = conceptId;
+            this.details = details;
+        }
+
+        Rule getRule(){
+            return rule;
+        }
+
+        Level getSeverity(){
+            return rule.severity;
+        }
+
+        String getVersionLabel(){
+            return versionLabel;
+        }
+
+        String getSheet(){
+            return sheet;
+        }
+
+        int getRow(){
+            return row;
+        }
+
+        String getColumn(){
+            return column;
+        }
+
+        String getConceptId(){
+            return conceptId;
+        }
+
+        long getCount(){
+            return count;
+        }
+
+        /**
+         * returns the message of the issue, as it is logged for the first time it was found
+         * @return the message
+         */
+        String getMessage(){
+            return ParameterizedMessage.format(rule.message, getParameters(versionLabel, details));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import palgacodebooktoxml.utils.ExcelUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Excel report of the problems found in the codebooks and the statistics of each version, so the codebooks can be
+ * fixed without going through the log
+ *
+ * The workbook is streamed: only the most recent rows of a sheet are kept in memory, so a report with many issues
+ * does not need much memory.
+ */
+class ValidationReport {
+    private static final Logger logger = LogManager.getLogger(ValidationReport.class.getName());
+
+    private static final List<String> ISSUE_HEADER = Arrays.asList("version", "severity", "rule", "sheet", "row", "column", "concept", "occurrences", "message");
+    private static final List<String> RULE_HEADER = Arrays.asList("rule", "severity", "occurrences");
+
+    private ValidationReport(){}
+
+    /**
+     * writes the report
+     * @param fileName         the report file
+     * @param validationIssues the problems found while reading the codebooks
+     * @param runReport        the report of the run, for the statistics of each version
+     */
+    static void write(String fileName, ValidationIssues validationIssues, RunReport runReport){
+        SXSSFWorkbook workbook = ExcelUtils.createStreamingXLSXWorkbook();
+        try {
+            CellStyle headerStyle = ExcelUtils.createHeaderStyle(workbook, IndexedColors.GREY_25_PERCENT);
+            writeIssueSheet(workbook, headerStyle, validationIssues.getIssues());
+            writeRuleSheet(workbook, headerStyle, validationIssues.getRuleCounts());
+            writeVersionSheet(workbook, headerStyle, runReport.getVersionTable());
+            if(ExcelUtils.writeXLSXWorkBook(workbook, fileName)){
+                logger.log(Level.INFO, "Validation report written to {}", fileName);
+            }
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    /**
+     * writes the Issues sheet, with a row for each issue
+     * @param workbook    the workbook
+     * @param headerStyle style for the header
+     * @param issues      the issues
+     */
+    private static void writeIssueSheet(SXSSFWorkbook workbook, CellStyle headerStyle, List<ValidationIssues.Issue> issues){
+        ExcelUtils.createSheetWithHeader(workbook, "Issues", ISSUE_HEADER, headerStyle);
+        Sheet sheet = workbook.getSheet("Issues");
+        for(ValidationIssues.Issue issue:issues){
+            ExcelUtils.writeValues(sheet, Arrays.asList(issue.getVersionLabel(), issue.getSeverity().name(), issue.getRule().name(),
+                    issue.getSheet(), issue.getRow()<0 ? "" : String.valueOf(issue.getRow()), issue.getColumn(),
+                    issue.getConceptId(), String.valueOf(issue.getCount()), issue.getMessage()));
+        }
+    }
+
+    /**
+     * writes the Rules sheet, with the number of issues found by each rule
+     * @param workbook    the workbook
+     * @param headerStyle style for the header
+     * @param ruleCounts  the number of issues of each rule
+     */
+    private static void writeRuleSheet(SXSSFWorkbook workbook, CellStyle headerStyle, Map<ValidationIssues.Rule, Long> ruleCounts){
+        ExcelUtils.createSheetWithHeader(workbook, "Rules", RULE_HEADER, headerStyle);
+        Sheet sheet = workbook.getSheet("Rules");
+        for(Map.Entry<ValidationIssues.Rule, Long> entry:ruleCounts.entrySet()){
+            ExcelUtils.writeValues(sheet, Arrays.asList(entry.getKey().name(), entry.getKey().getSeverity().name(), String.valueOf(entry.getValue())));
+        }
+    }
+
+    /**
+     * writes the Versions sheet, with the statistics of each version
+     * @param workbook     the workbook
+     * @param headerStyle  style for the header
+     * @param versionTable the header followed by a row for each version
+     */
+    private static void writeVersionSheet(SXSSFWorkbook workbook, CellStyle headerStyle, List<List<String>> versionTable){
+        ExcelUtils.createSheetWithHeader(workbook, "Versions", versionTable.get(0), headerStyle);
+        Sheet sheet = workbook.getSheet("Versions");
+        for(List<String> row:versionTable.subList(1, versionTable.size())){
+            ExcelUtils.writeValues(sheet, row);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.codebook;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import palgacodebooktoxml.utils.ExcelUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads a codebook by building the complete POI workbook in memory
+ */
+class WorkbookSheetReader implements CodebookSheetReader {
+    private final Workbook workbook;
+
+    /**
+     * opens the workbook
+     * @param path the Excel codebook file
+     * @throws IOException
+     * @throws InvalidFormatException
+     */
+    WorkbookSheetReader(Path path) throws IOException, InvalidFormatException {
+        workbook = WorkbookFactory.create(path.toFile());
+    }
+
+    @Override
+    public boolean hasSheet(String sheetName) {
+        return workbook.getSheet(sheetName)!=null;
+    }
+
+    @Override
+    public void readSheet(String sheetName, RowHandler rowHandler) throws IOException {
+        Sheet sheet = workbook.getSheet(sheetName);
+        int lastRowNr = sheet.getLastRowNum();
+        for(int i=0; i<=lastRowNr; i++){
+            Row row = sheet.getRow(i);
+            // only pass rows which exist and contain something
+            if(row!=null && !ExcelUtils.isEmptyRow(row)){
+                rowHandler.handleRow(i, ExcelUtils.getRowValues(row));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        workbook.close();
+    }
+}
@@ -76,6 +76,20 @@ class GUIWizard {
         return "";
     }
 
+    /**
+     * retrieve the value of a checkbox from the wizard settings map
+     * @param wizardSettings    map with the wizardsettings
+     * @param setting           the setting for which we want the value
+     * @param defaultValue      the value to use if the setting is not in the map
+     * @return the boolean value of the setting
+     */
+    private static boolean getBooleanSetting(Map<String, Object> wizardSettings, String setting, boolean defaultValue){
+        if(wizardSettings.containsKey(setting)){
+            return (Boolean) wizardSettings.get((setting));
+        }
+        return defaultValue;
+    }
+
     /**
      * add a tooltip to an item
      * @param control  the item to which to add the tooltip
@@ -215,6 +229,8 @@ class GUIWizard {
             private TextField nrLanguagesSelectedTextField;
             private ComboBox <String> experimentalComboBox;
             private ComboBox <String> statusCodeComboBox;
+            private CheckBox codebookCacheCheckBox;
+            private CheckBox clearCodebookCacheCheckBox;
             private final ComboBox <String> defaultLanguageComboBox = createComboBox("defaultLanguage", FXCollections.observableArrayList());
             private final TextArea authorsArea;
             private final TextArea copyrightArea;
@@ -271,6 +287,8 @@ class GUIWizard {
                 gridPane.add(statusCodeComboBox,1,rowNum);
                 statusCodeComboBox.setValue(oldParameters.getStatusCode());
 
+                rowNum = addCodebookCacheRow(gridPane, rowNum);
+
                 // create and add the authors text area
                 gridPane.add(new Label("Authors:"),0,++rowNum);
                 gridPane.add(authorsArea,1,rowNum);
@@ -350,6 +368,33 @@ class GUIWizard {
                 return row;
             }
 
+            /**
+             * add the row which allows the user to bypass or clear the codebook cache
+             * @param gridPane the gridPane
+             * @param row      the row number
+             * @return the new row number
+             */
+            private int addCodebookCacheRow(GridPane gridPane, int row){
+                gridPane.add(new Label("Codebook cache:"), 0, ++row);
+                GridPane smallPane = createGridPane();
+                codebookCacheCheckBox = new CheckBox("Use cached codebooks");
+                codebookCacheCheckBox.setId("codebookCache");
+                codebookCacheCheckBox.setSelected(oldParameters.useCodebookCache());
+                addTooltip(codebookCacheCheckBox, "Take codebooks whose Excel file has not changed from the .codebookcache directory in the codebook directory");
+                smallPane.add(codebookCacheCheckBox, 0, 0);
+
+                clearCodebookCacheCheckBox = new CheckBox("Clear the cache first");
+                clearCodebookCacheCheckBox.setId("clearCodebookCache");
+                // clearing is a one-off action, so it is not remembered from the previous run
+                clearCodebookCacheCheckBox.setSelected(false);
+                clearCodebookCacheCheckBox.disableProperty().bind(codebookCacheCheckBox.selectedProperty().not());
+                addTooltip(clearCodebookCacheCheckBox, "Remove all codebooks from the .codebookcache directory and read them from their Excel files again");
+                smallPane.add(clearCodebookCacheCheckBox, 1, 0);
+
+                gridPane.add(smallPane, 1, row);
+                return row;
+            }
+
             /**
              * add event listener to the languageCheckComboBox which updates the nrLanguageTextfield as well as calls the setupLanguagePages
              */
@@ -611,7 +656,16 @@ class GUIWizard {
              */
             private void generateContentText(){
                 String content = "An art-decoc xml file will be created for the codebooks found in "+runParameters.getCodebookDirectory()+" \n";
-                content += "The output will be written to: "+runParameters.getOutputFile();
+                content += "The output will be written to: "+runParameters.getOutputFile()+" \n";
+                if(!runParameters.useCodebookCache()){
+                    content += "The codebook cache is not used";
+                }
+                else if(runParameters.clearCodebookCache()){
+                    content += "The codebook cache in "+runParameters.getCodebookCacheDirectory()+" is cleared first";
+                }
+                else {
+                    content += "Unchanged codebooks are taken from the cache in "+runParameters.getCodebookCacheDirectory();
+                }
                 this.setContentText(content);
             }
 
@@ -628,6 +682,9 @@ class GUIWizard {
                 String copyrightString = getStringSetting(wizard.getSettings(), "copyrightArea");
                 String statusCode =  getStringSetting(wizard.getSettings(), "statusCode");
                 runParameters = new RunParameters(codebookDirectory, projectId, projectPrefix, experimental, authorString, copyrightString, statusCode);
+                boolean useCodebookCache = getBooleanSetting(wizard.getSettings(), "codebookCache", true);
+                runParameters.setCodebookCache(useCodebookCache);
+                runParameters.setClearCodebookCache(useCodebookCache && getBooleanSetting(wizard.getSettings(), "clearCodebookCache", false));
                 addLanguageParameters(wizard, runParameters);
             }
 
@@ -283,17 +283,13 @@ public class MainWindow {
                 // reset the identifier manager
                 IdentifierManager.createIdentifierManager(runParameters);
 
-                // create the codebookmanager, reading the codebooks in the directory
+                // create the codebookmanager, finding the codebooks in the directory
                 CodebookManager codebookManager = CodebookManager.readCodebooks(runParameters);
 
-                // transform the codebooks to the artdecor datatypes
-                logger.log(Level.INFO, "Transforming codebooks...");
+                // transform the codebooks to the artdecor datatypes and write the xml file, one version at a time
+                logger.log(Level.INFO, "Transforming codebooks and writing ArtDecor XML file...");
                 CodebookToArtDecorConvertor codebookToArtDecorConvertor = new CodebookToArtDecorConvertor(codebookManager, runParameters);
-                codebookToArtDecorConvertor.transformCodebooks();
-
-                // write the xml file
-                logger.log(Level.INFO, "Writing ArtDecor XML file...");
-                codebookToArtDecorConvertor.writeOutput(runParameters.getOutputFile());
+                codebookToArtDecorConvertor.convert(runParameters.getOutputFile());
 
                 logger.log(Level.INFO, "Finished!");
             } catch (Exception e){
@@ -26,6 +26,8 @@ import java.util.*;
  * Parameters for a run
  */
 public class RunParameters {
+    public static final String VALIDATION_REPORT_FILE_NAME = "validation-report.xlsx";
+
     private final String codebookDirectory;
     private final String projectId;
     private final String experimental;
@@ -40,6 +42,34 @@ public class RunParameters {
 
     private final Map<String, LanguageParameters> languageParametersMap = new HashMap<>();
 
+    // whether the Excel codebooks are streamed (XSSF event model) or read as complete workbooks
+    private boolean streamingReader = true;
+    // number of threads used to read the Excel codebooks
+    private int readerThreads = Runtime.getRuntime().availableProcessors();
+    // number of codebook versions read ahead of the conversion, including the one being converted
+    private int readAhead = 1;
+    // whether parsed codebooks are cached on disk, and whether that cache is emptied before reading
+    private boolean codebookCache = true;
+    private boolean clearCodebookCache = false;
+    private String codebookCacheDirectory = null;
+    // output file; by default output.xml in the codebook directory
+    private String outputFile = null;
+    private boolean runReport = true;
+    // whether the output is written as gzip, with which level and by how many threads
+    private boolean compressOutput = false;
+    private int compressionLevel = 6;
+    private int compressionThreads = 1;
+    // whether the output file is left as it is when the new output has the same digest as the previous one
+    private boolean skipUnchangedOutput = true;
+    // whether the output is written as shards, one for each version
+    private boolean shardOutput = false;
+    // number of threads which render the datasets and valuesets
+    private int renderThreads = Runtime.getRuntime().availableProcessors();
+    // number of problems of each kind which are logged while the codebooks are read
+    private int validationLogLimit = 50;
+    // whether an Excel report of the problems in the codebooks is written next to the codebooks
+    private boolean validationReport = true;
+
     /**
      * Constructor for the runparameters
      * @param codebookDirectory directory that contains one or more codebooks
@@ -74,11 +104,221 @@ public class RunParameters {
     }
 
     /**
-     * returns the codebook directory+output.xml
-     * @return the codebook directory+output.xml
+     * sets the file to which the output is written, instead of output.xml in the codebook directory
+     * @param outputFile the output file
+     */
+    public void setOutputFile(String outputFile){
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * returns the output file; the codebook directory+output.xml unless a different file was set
+     * when the output is compressed, .gz is added if the file does not end with it already
+     * @return the output file
      */
     public String getOutputFile(){
-        return codebookDirectory.endsWith("\\")||codebookDirectory.endsWith("/")?codebookDirectory+"output.xml":codebookDirectory+File.separator+"output.xml";
+        String file = outputFile;
+        if(file==null){
+            file = codebookDirectory.endsWith("\\")||codebookDirectory.endsWith("/")?codebookDirectory+"output.xml":codebookDirectory+File.separator+"output.xml";
+        }
+        if(compressOutput && !file.toLowerCase().endsWith(".gz")){
+            file += ".gz";
+        }
+        return file;
+    }
+
+    /**
+     * sets whether the output is compressed with gzip while it is written
+     * @param compressOutput true to compress the output
+     */
+    public void setCompressOutput(boolean compressOutput){
+        this.compressOutput = compressOutput;
+    }
+
+    /**
+     * returns whether the output is compressed with gzip
+     * @return true/false
+     */
+    public boolean compressOutput(){
+        return compressOutput;
+    }
+
+    /**
+     * sets the compression level of the output
+     * @param compressionLevel the level, from 1 (fastest) to 9 (smallest)
+     */
+    public void setCompressionLevel(int compressionLevel){
+        this.compressionLevel = Math.max(1, Math.min(9, compressionLevel));
+    }
+
+    /**
+     * returns the compression level of the output
+     * @return the level
+     */
+    public int getCompressionLevel(){
+        return compressionLevel;
+    }
+
+    /**
+     * sets the number of threads which compress the output; with more than one the output is compressed in blocks
+     * @param compressionThreads the number of threads; at least 1
+     */
+    public void setCompressionThreads(int compressionThreads){
+        this.compressionThreads = Math.max(1, compressionThreads);
+    }
+
+    /**
+     * returns the number of threads which compress the output
+     * @return the number of threads
+     */
+    public int getCompressionThreads(){
+        return compressionThreads;
+    }
+
+    /**
+     * sets whether a report with the timings and counts of the run is written next to the output
+     * @param runReport true to write the report
+     */
+    public void setRunReport(boolean runReport){
+        this.runReport = runReport;
+    }
+
+    /**
+     * returns whether a report with the timings and counts of the run is written next to the output
+     * @return true/false
+     */
+    public boolean writeRunReport(){
+        return runReport;
+    }
+
+    /**
+     * returns the file to which the run report is written: the output file with -report.json instead of .xml (or .xml.gz)
+     * @return the run report file
+     */
+    public String getRunReportFile(){
+        return getOutputBaseName()+"-report.json";
+    }
+
+    /**
+     * returns the output file without .xml or .xml.gz
+     * @return the output file without its extension
+     */
+    private String getOutputBaseName(){
+        String outputFile = getOutputFile();
+        if(outputFile.toLowerCase().endsWith(".gz")){
+            outputFile = outputFile.substring(0, outputFile.length()-".gz".length());
+        }
+        if(outputFile.toLowerCase().endsWith(".xml")){
+            outputFile = outputFile.substring(0, outputFile.length()-".xml".length());
+        }
+        return outputFile;
+    }
+
+    /**
+     * sets whether the output file is left as it is when the new output is the same as that of the previous run, so
+     * tools watching the file are not triggered for nothing
+     * @param skipUnchangedOutput true to leave an unchanged output file as it is
+     */
+    public void setSkipUnchangedOutput(boolean skipUnchangedOutput){
+        this.skipUnchangedOutput = skipUnchangedOutput;
+    }
+
+    /**
+     * returns whether the output file is left as it is when the new output is the same
+     * @return true/false
+     */
+    public boolean skipUnchangedOutput(){
+        return skipUnchangedOutput;
+    }
+
+    /**
+     * returns the file with the SHA-256 digest of the (uncompressed) output: the output file with .sha256 added
+     * @return the digest file
+     */
+    public String getOutputDigestFile(){
+        return getOutputFile()+".sha256";
+    }
+
+    /**
+     * sets whether the output is written as shards, a file for each version with a manifest, instead of a single file
+     * @param shardOutput true to write shards
+     */
+    public void setShardOutput(boolean shardOutput){
+        this.shardOutput = shardOutput;
+    }
+
+    /**
+     * returns whether the output is written as shards
+     * @return true/false
+     */
+    public boolean shardOutput(){
+        return shardOutput;
+    }
+
+    /**
+     * sets the number of threads which render the datasets and valuesets, which are written in order afterwards
+     * @param renderThreads the number of threads; at least 1
+     */
+    public void setRenderThreads(int renderThreads){
+        this.renderThreads = Math.max(1, renderThreads);
+    }
+
+    /**
+     * returns the number of threads which render the datasets and valuesets
+     * @return the number of threads
+     */
+    public int getRenderThreads(){
+        return renderThreads;
+    }
+
+    /**
+     * returns the directory to which the shards are written: the output file with -shards instead of .xml (or .xml.gz)
+     * @return the shard directory
+     */
+    public String getShardDirectory(){
+        return getOutputBaseName()+"-shards";
+    }
+
+    /**
+     * sets the number of problems of each kind which are logged while the codebooks are read; the remaining
+     * problems are only counted
+     * @param validationLogLimit the number of problems; at least 0
+     */
+    public void setValidationLogLimit(int validationLogLimit){
+        this.validationLogLimit = Math.max(0, validationLogLimit);
+    }
+
+    /**
+     * returns the number of problems of each kind which are logged while the codebooks are read
+     * @return the number of problems
+     */
+    public int getValidationLogLimit(){
+        return validationLogLimit;
+    }
+
+    /**
+     * sets whether an Excel report of the problems in the codebooks is written next to the codebooks
+     * @param validationReport true to write the report
+     */
+    public void setValidationReport(boolean validationReport){
+        this.validationReport = validationReport;
+    }
+
+    /**
+     * returns whether an Excel report of the problems in the codebooks is written next to the codebooks
+     * @return true/false
+     */
+    public boolean writeValidationReport(){
+        return validationReport;
+    }
+
+    /**
+     * returns the file to which the validation report is written: the codebook directory+validation-report.xlsx
+     * this file is skipped when the codebooks are read
+     * @return the validation report file
+     */
+    public String getValidationReportFile(){
+        return codebookDirectory.endsWith("\\")||codebookDirectory.endsWith("/")?codebookDirectory+VALIDATION_REPORT_FILE_NAME:codebookDirectory+File.separator+VALIDATION_REPORT_FILE_NAME;
     }
 
     /**
@@ -155,6 +395,107 @@ public class RunParameters {
         return defaultLanguage;
     }
 
+    /**
+     * sets whether the Excel codebooks are streamed or read as complete workbooks
+     * @param streamingReader true to stream the codebooks, false to build the complete workbook
+     */
+    public void setStreamingReader(boolean streamingReader){
+        this.streamingReader = streamingReader;
+    }
+
+    /**
+     * returns whether the Excel codebooks are streamed
+     * @return true/false
+     */
+    public boolean useStreamingReader(){
+        return streamingReader;
+    }
+
+    /**
+     * sets the number of threads used to read the Excel codebooks
+     * @param readerThreads the number of threads; at least 1
+     */
+    public void setReaderThreads(int readerThreads){
+        this.readerThreads = Math.max(1, readerThreads);
+    }
+
+    /**
+     * returns the number of threads used to read the Excel codebooks
+     * @return the number of threads
+     */
+    public int getReaderThreads(){
+        return readerThreads;
+    }
+
+    /**
+     * sets the number of codebook versions which are read ahead of the conversion, including the one being
+     * converted; each of them is in memory, so this rather than the number of reader threads limits the memory used
+     * @param readAhead the number of versions; at least 1
+     */
+    public void setReadAhead(int readAhead){
+        this.readAhead = Math.max(1, readAhead);
+    }
+
+    /**
+     * returns the number of codebook versions which are read ahead of the conversion
+     * @return the number of versions
+     */
+    public int getReadAhead(){
+        return readAhead;
+    }
+
+    /**
+     * sets whether parsed codebooks are cached on disk, so unchanged Excel files are not parsed again
+     * @param codebookCache true to use the cache, false to always read the Excel files
+     */
+    public void setCodebookCache(boolean codebookCache){
+        this.codebookCache = codebookCache;
+    }
+
+    /**
+     * returns whether parsed codebooks are cached on disk
+     * @return true/false
+     */
+    public boolean useCodebookCache(){
+        return codebookCache;
+    }
+
+    /**
+     * sets whether the codebook cache is emptied before the codebooks are read
+     * @param clearCodebookCache true to clear the cache
+     */
+    public void setClearCodebookCache(boolean clearCodebookCache){
+        this.clearCodebookCache = clearCodebookCache;
+    }
+
+    /**
+     * returns whether the codebook cache is emptied before the codebooks are read
+     * @return true/false
+     */
+    public boolean clearCodebookCache(){
+        return clearCodebookCache;
+    }
+
+    /**
+     * sets the directory in which the parsed codebooks are cached
+     * @param codebookCacheDirectory the directory
+     */
+    public void setCodebookCacheDirectory(String codebookCacheDirectory){
+        this.codebookCacheDirectory = codebookCacheDirectory;
+    }
+
+    /**
+     * returns the directory in which the parsed codebooks are cached
+     * by default this is the .codebookcache directory in the codebook directory
+     * @return the directory
+     */
+    public String getCodebookCacheDirectory(){
+        if(codebookCacheDirectory!=null){
+            return codebookCacheDirectory;
+        }
+        return codebookDirectory.endsWith("\\")||codebookDirectory.endsWith("/")?codebookDirectory+".codebookcache":codebookDirectory+File.separator+".codebookcache";
+    }
+
     /**
      * adds project information for a specific language
      * @param language           the language
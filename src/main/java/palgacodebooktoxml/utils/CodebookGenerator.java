@@ -0,0 +1,307 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.utils;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Generates synthetic Excel codebooks, e.g. for benchmarks and load tests
+ * Each version is written as a separate codebook (codebook_v1.xlsx, codebook_v2.xlsx, ...) with an Info sheet, a
+ * Codebook sheet and a sheet per codelist. The concepts form a tree of the requested depth; the leaves refer to the
+ * codelists, which are shared between concepts. Between two versions a fraction (the change rate) of the concepts gets
+ * a new description and the same fraction of the codelists gets an extra option.
+ * The workbooks are streamed, so large codebooks can be generated without much memory.
+ * The output only depends on the settings and the seed.
+ */
+public class CodebookGenerator {
+    private static final List<String> CODEBOOK_HEADER = Arrays.asList("id", "codesystem", "code", "description_code", "codelist_ref", "data_type", "properties", "parent");
+    private static final List<String> CODELIST_HEADER = Arrays.asList("codesystem", "code", "description_code");
+    private static final String[] DATA_TYPES = {"string", "int", "date", "decimal", "boolean"};
+    private static final LocalDate FIRST_EFFECTIVE_DATE = LocalDate.of(2020, 1, 1);
+
+    private final int conceptCount;
+    private final int versions;
+    private int depth = 4;
+    private int codelistCount;
+    private int optionsPerCodelist = 10;
+    private List<String> languages = Arrays.asList("nl", "en");
+    private double changeRate = 0.05;
+    private long seed = 1;
+
+    /**
+     * creates a generator
+     * @param conceptCount number of concepts in each codebook
+     * @param versions     number of versions (codebooks)
+     */
+    public CodebookGenerator(int conceptCount, int versions){
+        this.conceptCount = Math.max(1, conceptCount);
+        this.versions = Math.max(1, versions);
+        this.codelistCount = Math.max(1, conceptCount/10);
+    }
+
+    /**
+     * sets the depth of the concept tree; 1 means no concept has a parent
+     * @param depth the depth
+     */
+    public void setDepth(int depth){
+        this.depth = Math.max(1, depth);
+    }
+
+    /**
+     * sets the number of different codelists; concepts with a codelist share these
+     * @param codelistCount number of codelists
+     */
+    public void setCodelistCount(int codelistCount){
+        this.codelistCount = Math.max(1, codelistCount);
+    }
+
+    /**
+     * sets the number of options in a codelist in the first version
+     * @param optionsPerCodelist number of options
+     */
+    public void setOptionsPerCodelist(int optionsPerCodelist){
+        this.optionsPerCodelist = Math.max(1, optionsPerCodelist);
+    }
+
+    /**
+     * sets the languages for which descriptions are generated
+     * @param languages the languages, e.g. nl and en
+     */
+    public void setLanguages(List<String> languages){
+        this.languages = new ArrayList<>(languages);
+    }
+
+    /**
+     * sets the fraction of the concepts and codelists that change in each version
+     * @param changeRate the fraction, between 0 and 1
+     */
+    public void setChangeRate(double changeRate){
+        this.changeRate = Math.min(1, Math.max(0, changeRate));
+    }
+
+    /**
+     * sets the seed for the random choices
+     * @param seed the seed
+     */
+    public void setSeed(long seed){
+        this.seed = seed;
+    }
+
+    /**
+     * writes the codebooks
+     * @param directory the directory in which to write the codebooks
+     */
+    public void write(File directory){
+        Random random = new Random(seed);
+        // version in which the description of a concept and the options of a codelist last changed
+        int [] conceptChanged = new int[conceptCount];
+        int [] codelistChanged = new int[codelistCount];
+        int [] codelistExtraOptions = new int[codelistCount];
+        int branching = getBranching();
+
+        for(int version=1; version<=versions; version++){
+            if(version>1){
+                for(int i=0; i<conceptCount; i++){
+                    if(random.nextDouble()<changeRate) conceptChanged[i] = version;
+                }
+                for(int i=0; i<codelistCount; i++){
+                    if(random.nextDouble()<changeRate){
+                        codelistChanged[i] = version;
+                        codelistExtraOptions[i]++;
+                    }
+                }
+            }
+
+            SXSSFWorkbook workbook = ExcelUtils.createStreamingXLSXWorkbook();
+            try {
+                CellStyle headerStyle = ExcelUtils.createHeaderStyle(workbook, IndexedColors.GREY_25_PERCENT);
+                writeInfoSheet(workbook, version);
+                writeCodebookSheet(workbook, headerStyle, version, branching, conceptChanged);
+                for(int i=0; i<codelistCount; i++){
+                    writeCodelistSheet(workbook, headerStyle, i, codelistChanged[i], codelistExtraOptions[i]);
+                }
+                ExcelUtils.writeXLSXWorkBook(workbook, new File(directory, "codebook_v"+version+".xlsx").getPath());
+            } finally {
+                workbook.dispose();
+            }
+        }
+    }
+
+    /**
+     * returns the number of children of each group, such that the concept tree gets the requested depth
+     * @return the number of children of a group
+     */
+    private int getBranching(){
+        if(depth==1){
+            return 0;
+        }
+        int branching = 1;
+        // a tree with branching b and depth d holds 1+b+...+b^(d-1) concepts
+        while(treeSize(branching)<conceptCount){
+            branching++;
+        }
+        return branching;
+    }
+
+    /**
+     * returns the number of concepts in a full tree with the depth of the generator
+     * @param branching number of children of each group
+     * @return the number of concepts
+     */
+    private long treeSize(int branching){
+        long size = 0;
+        long level = 1;
+        for(int i=0; i<depth && size<conceptCount; i++){
+            size += level;
+            level *= branching;
+        }
+        return size;
+    }
+
+    /**
+     * writes the Info sheet
+     * @param workbook the workbook
+     * @param version  the version
+     */
+    private void writeInfoSheet(SXSSFWorkbook workbook, int version){
+        Sheet sheet = workbook.createSheet("Info");
+        ExcelUtils.writeValues(sheet, Arrays.asList("Version", String.valueOf(version)));
+        ExcelUtils.writeValues(sheet, Arrays.asList("Effectivedate", FIRST_EFFECTIVE_DATE.plusMonths(version-1).toString()));
+        for(String language:languages){
+            ExcelUtils.writeValues(sheet, Arrays.asList("DatasetName_"+language, "Generated codebook ("+language+")"));
+            ExcelUtils.writeValues(sheet, Arrays.asList("DatasetDescription_"+language, "Generated codebook, version "+version+" ("+language+")"));
+        }
+    }
+
+    /**
+     * writes the Codebook sheet
+     * the concepts are stored as a tree in breadth-first order: the parent of concept i is concept (i-1)/branching
+     * @param workbook       the workbook
+     * @param headerStyle    style for the header
+     * @param version        the version
+     * @param branching      number of children of each group
+     * @param conceptChanged version in which each concept last changed
+     */
+    private void writeCodebookSheet(SXSSFWorkbook workbook, CellStyle headerStyle, int version, int branching, int [] conceptChanged){
+        List<String> header = new ArrayList<>(CODEBOOK_HEADER);
+        for(String language:languages){
+            header.add("description_"+language);
+        }
+        ExcelUtils.createSheetWithHeader(workbook, "Codebook", header, headerStyle);
+        Sheet sheet = workbook.getSheet("Codebook");
+
+        for(int i=0; i<conceptCount; i++){
+            String id = "Concept"+i;
+            boolean isGroup = branching>0 && (long) i*branching+1<conceptCount;
+            String parent = branching>0 && i>0 ? "Concept"+((i-1)/branching) : "";
+            // every other leaf has a codelist
+            String codelist = !isGroup && i%2==0 ? "Codelist"+((i/2)%codelistCount) : "";
+            String dataType = isGroup ? "string" : codelist.isEmpty() ? DATA_TYPES[i%DATA_TYPES.length] : "code";
+
+            List<String> values = new ArrayList<>(Arrays.asList(id, "SNOMED CT", String.valueOf(100000+i), "Description of code "+i,
+                    codelist, dataType, "{PALGA_COLNAME="+id+"}", parent));
+            for(String language:languages){
+                values.add(getDescription("Concept", i, language, conceptChanged[i]));
+            }
+            ExcelUtils.writeValues(sheet, values);
+        }
+    }
+
+    /**
+     * writes the sheet of a codelist
+     * @param workbook     the workbook
+     * @param headerStyle  style for the header
+     * @param codelist     number of the codelist
+     * @param changed      version in which the codelist last changed
+     * @param extraOptions number of options added since the first version
+     */
+    private void writeCodelistSheet(SXSSFWorkbook workbook, CellStyle headerStyle, int codelist, int changed, int extraOptions){
+        List<String> header = new ArrayList<>(CODELIST_HEADER);
+        for(String language:languages){
+            header.add("value_"+language);
+            header.add("description_"+language);
+        }
+        ExcelUtils.createSheetWithHeader(workbook, "Codelist"+codelist, header, headerStyle);
+        Sheet sheet = workbook.getSheet("Codelist"+codelist);
+
+        for(int option=0; option<optionsPerCodelist+extraOptions; option++){
+            List<String> values = new ArrayList<>(Arrays.asList("SNOMED CT", String.valueOf(codelist*1000+option), "Option "+option+" of codelist "+codelist));
+            for(String language:languages){
+                values.add("value "+option+" ("+language+")");
+                values.add(getDescription("Option "+option+" of codelist", codelist, language, option<optionsPerCodelist ? 0 : changed));
+            }
+            ExcelUtils.writeValues(sheet, values);
+        }
+    }
+
+    /**
+     * returns a description, which includes the version in which it last changed
+     * @param prefix   start of the description
+     * @param number   number of the item
+     * @param language the language
+     * @param changed  version in which the item last changed; 0 if it never changed
+     * @return the description
+     */
+    private static String getDescription(String prefix, int number, String language, int changed){
+        String description = prefix+" "+number+" ("+language+")";
+        if(changed>0){
+            description += ", changed in version "+changed;
+        }
+        return description;
+    }
+
+    /**
+     * generates codebooks from the command line
+     * arguments: directory conceptCount versions [depth codelistCount optionsPerCodelist languages changeRate seed]
+     * languages is a comma separated list, e.g. nl,en
+     * @param args the arguments
+     */
+    public static void main(String [] args){
+        // the default configuration logs to the TextAreaAppender, which needs JavaFX
+        if(System.getProperty("log4j.configurationFile")==null) {
+            System.setProperty("log4j.configurationFile", "log4j2-cli.xml");
+        }
+        if(args.length<3){
+            System.err.println("Usage: java -cp <jar> palgacodebooktoxml.utils.CodebookGenerator <directory> <conceptCount> <versions> " +
+                    "[depth] [codelistCount] [optionsPerCodelist] [languages] [changeRate] [seed]");
+            System.exit(2);
+        }
+        File directory = new File(args[0]);
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            System.err.println("Unable to create "+directory);
+            System.exit(1);
+        }
+        CodebookGenerator codebookGenerator = new CodebookGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        if(args.length>3) codebookGenerator.setDepth(Integer.parseInt(args[3]));
+        if(args.length>4) codebookGenerator.setCodelistCount(Integer.parseInt(args[4]));
+        if(args.length>5) codebookGenerator.setOptionsPerCodelist(Integer.parseInt(args[5]));
+        if(args.length>6) codebookGenerator.setLanguages(Arrays.asList(args[6].split(",")));
+        if(args.length>7) codebookGenerator.setChangeRate(Double.parseDouble(args[7]));
+        if(args.length>8) codebookGenerator.setSeed(Long.parseLong(args[8]));
+        codebookGenerator.write(directory);
+    }
+}
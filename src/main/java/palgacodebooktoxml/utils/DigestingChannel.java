@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Channel which calculates the SHA-256 digest of the bytes written to it, before passing them on to another channel,
+ * so the digest of a file is known when it has been written without reading it again
+ */
+public class DigestingChannel implements WritableByteChannel {
+    private final WritableByteChannel channel;
+    private final MessageDigest messageDigest;
+    private String digest = null;
+
+    /**
+     * create the channel
+     * @param channel the channel to which the bytes are passed on
+     */
+    public DigestingChannel(WritableByteChannel channel){
+        this.channel = channel;
+        try {
+            this.messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ByteBuffer written = src.duplicate();
+        int length = channel.write(src);
+        written.limit(written.position()+length);
+        messageDigest.update(written);
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * returns the digest of the bytes written, which is calculated the first time; call it after the last write
+     * @return the digest as a hexadecimal string
+     */
+    public String getDigest(){
+        if(digest==null){
+            StringBuilder stringBuilder = new StringBuilder();
+            for(byte b:messageDigest.digest()){
+                stringBuilder.append(String.format("%02x", b));
+            }
+            digest = stringBuilder.toString();
+        }
+        return digest;
+    }
+}
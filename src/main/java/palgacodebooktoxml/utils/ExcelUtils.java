@@ -22,6 +22,7 @@ package palgacodebooktoxml.utils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.FileOutputStream;
@@ -34,6 +35,8 @@ import java.util.List;
  */
 public class ExcelUtils {
     private static final Logger logger = LogManager.getLogger(ExcelUtils.class.getName());
+    // number of rows per sheet a streaming workbook keeps in memory
+    private static final int STREAMING_WINDOW_SIZE = 100;
 
     /**
      * checks whether a row is empty
@@ -51,6 +54,32 @@ public class ExcelUtils {
         return isEmptyRow;
     }
 
+    /**
+     * checks whether a row, given as its cell values, is empty
+     * @param values the cell values of the row
+     * @return true/false
+     */
+    public static boolean isEmptyRow(List<String> values){
+        for(String value:values){
+            if(!value.trim().equalsIgnoreCase("")){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * transform the cells of a row to a list of values, with the column index as index in the list
+     * @param row the row
+     * @return the values of the row
+     */
+    public static List<String> getRowValues(Row row){
+        List<String> values = new ArrayList<>();
+        for(int i=0; i<row.getLastCellNum(); i++){
+            values.add(getCellValue(row, i));
+        }
+        return values;
+    }
 
     /**
      * transform row to list
@@ -86,6 +115,33 @@ public class ExcelUtils {
         return StringUtils.prepareValueForXML(cellValue);
     }
 
+    /**
+     * get the value of a column from a row given as its cell values
+     * @param values      the cell values of the row
+     * @param columnIndex index of the column, as resolved from the header; -1 if the column is missing
+     * @return the value found, or an empty string if the row has no value for the column
+     */
+    public static String getValue(List<String> values, int columnIndex){
+        String cellValue="";
+        if(columnIndex>=0 && columnIndex<values.size()) {
+            cellValue = values.get(columnIndex);
+        }
+        return StringUtils.prepareValueForXML(cellValue);
+    }
+
+    /**
+     * transform the values of a header row to lower case column names
+     * @param values the cell values of the header row
+     * @return list with the column names
+     */
+    public static List<String> getHeaderAsList(List<String> values){
+        List<String> list = new ArrayList<>();
+        for(String value:values){
+            list.add(value.toLowerCase());
+        }
+        return list;
+    }
+
 
     /**
      * get value of a row based on an index
@@ -110,17 +166,30 @@ public class ExcelUtils {
         return new XSSFWorkbook();
     }
 
+    /**
+     * create a new workbook which only keeps the most recent rows of each sheet in memory, for writing large files
+     * rows can only be added at the end of a sheet, and dispose() should be called afterwards to remove the
+     * temporary files
+     * @return the workbook
+     */
+    public static SXSSFWorkbook createStreamingXLSXWorkbook(){
+        return new SXSSFWorkbook(STREAMING_WINDOW_SIZE);
+    }
+
     /**
      * write a workbook to file
      * @param workbook the workbook to write
      * @param fileName the filename of the output file
+     * @return true if the file has been written
      */
-    public static void writeXLSXWorkBook(Workbook workbook, String fileName){
+    public static boolean writeXLSXWorkBook(Workbook workbook, String fileName){
         try (FileOutputStream fileOut = new FileOutputStream(fileName)){
             workbook.write(fileOut);
             fileOut.close();
+            return true;
         } catch (IOException e) {
             logger.error("Problem creating {}. The file has NOT been created.", fileName);
+            return false;
         }
     }
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writer for a piece of the output which is rendered separately and appended to the output later, so the pieces
+ * can be rendered on several threads and still be written in order
+ *
+ * The piece is kept in memory until it gets larger than a limit, after which it is written to a temporary file
+ * (in UTF-8) instead, so a few large pieces do not fill the memory. A spilled piece is appended by copying the
+ * bytes of its file.
+ */
+public class FragmentWriter extends Writer {
+    private final Path spillDirectory;
+    private final int memoryLimit;
+    private StringBuilder builder = new StringBuilder();
+    private Path spillFile = null;
+    private Utf8FileWriter spillWriter = null;
+
+    /**
+     * create the writer
+     * @param spillDirectory directory for the temporary file, if one is needed
+     * @param memoryLimit    the number of characters kept in memory
+     */
+    public FragmentWriter(Path spillDirectory, int memoryLimit){
+        this.spillDirectory = spillDirectory;
+        this.memoryLimit = memoryLimit;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if(spillWriter!=null){
+            spillWriter.write(cbuf, off, len);
+            return;
+        }
+        ensureOpen();
+        builder.append(cbuf, off, len);
+        spillIfTooLarge();
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if(spillWriter!=null){
+            spillWriter.write(str, off, len);
+            return;
+        }
+        ensureOpen();
+        builder.append(str, off, off+len);
+        spillIfTooLarge();
+    }
+
+    /**
+     * writes the characters kept in memory to a temporary file if there are too many of them
+     * @throws IOException
+     */
+    private void spillIfTooLarge() throws IOException {
+        if(builder.length()>memoryLimit){
+            spillFile = Files.createTempFile(spillDirectory, "fragment", ".tmp");
+            spillWriter = new Utf8FileWriter(spillFile);
+            spillWriter.append(builder);
+            builder = null;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(spillWriter!=null){
+            spillWriter.flush();
+        }
+    }
+
+    /**
+     * ends the piece; it can still be appended to the output
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if(spillWriter!=null){
+            spillWriter.close();
+        }
+    }
+
+    /**
+     * appends the piece to the output, after which it is deleted
+     * @param writer the output
+     * @throws IOException
+     */
+    public void transferTo(Utf8FileWriter writer) throws IOException {
+        try {
+            close();
+            if(spillFile!=null){
+                writer.transferFrom(spillFile);
+            }
+            else {
+                ensureOpen();
+                writer.append(builder);
+            }
+        } finally {
+            delete();
+        }
+    }
+
+    /**
+     * deletes the piece, including its temporary file
+     * @throws IOException
+     */
+    public void delete() throws IOException {
+        close();
+        builder = null;
+        if(spillFile!=null){
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    /**
+     * checks that the piece has not been deleted
+     * @throws IOException
+     */
+    private void ensureOpen() throws IOException {
+        if(builder==null){
+            throw new IOException("Fragment deleted");
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream which writes gzip, compressing blocks of the data on several threads
+ *
+ * The data is split into blocks which are deflated independently, each using the end of the previous block as its
+ * dictionary, so the compression is almost as good as compressing the data as a whole. A block ends with a sync flush
+ * (the last one with the end of the stream), which makes the concatenated blocks a single deflate stream, so the
+ * result is an ordinary gzip file. The checksum is calculated while the data is written.
+ * Only a few blocks can be waiting to be compressed, so a slow compression slows down the writer rather than filling
+ * the memory.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte [] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final OutputStream out;
+    private final int level;
+    private final ExecutorService executorService;
+    private final int maxPendingBlocks;
+    // the compressed blocks, in the order in which they are written
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private long size = 0;
+
+    private byte [] block = new byte[BLOCK_SIZE];
+    private int blockLength = 0;
+    private byte [] previousBlock = null;
+    private int previousBlockLength = 0;
+    private boolean closed = false;
+
+    /**
+     * create the stream and write the gzip header
+     * @param out     the stream to which the compressed data is written
+     * @param level   the compression level, 1 (fastest) to 9 (best)
+     * @param threads the number of threads compressing blocks
+     * @throws IOException
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int threads) throws IOException {
+        this.out = out;
+        this.level = level;
+        this.maxPendingBlocks = threads*2;
+        this.executorService = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "gzip-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        if(blockLength==BLOCK_SIZE){
+            submitBlock(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len>0) {
+            int length = Math.min(len, BLOCK_SIZE-blockLength);
+            System.arraycopy(b, off, block, blockLength, length);
+            blockLength += length;
+            off += length;
+            len -= length;
+            if(blockLength==BLOCK_SIZE){
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * hands the current block to the compressing threads and starts a new one
+     * @param last whether this is the last block of the stream
+     * @throws IOException
+     */
+    private void submitBlock(boolean last) throws IOException {
+        byte [] input = block;
+        int inputLength = blockLength;
+        byte [] dictionary = previousBlock;
+        int dictionaryLength = previousBlockLength;
+        crc.update(input, 0, inputLength);
+        size += inputLength;
+        pendingBlocks.add(executorService.submit(() -> compress(input, inputLength, dictionary, dictionaryLength, level, last)));
+
+        // the submitted block is used as the dictionary of the next one, so it is not reused
+        previousBlock = input;
+        previousBlockLength = inputLength;
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+
+        while (pendingBlocks.size()>maxPendingBlocks) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * deflates a block
+     * @param input            the data of the block
+     * @param inputLength      the length of the data
+     * @param dictionary       the data of the previous block, or null for the first block
+     * @param dictionaryLength the length of the data of the previous block
+     * @param level            the compression level
+     * @param last             whether this is the last block, which ends the deflate stream
+     * @return the compressed block
+     */
+    private static byte [] compress(byte [] input, int inputLength, byte [] dictionary, int dictionaryLength, int level, boolean last){
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if(dictionary!=null){
+                int dictionaryStart = Math.max(0, dictionaryLength-DICTIONARY_SIZE);
+                deflater.setDictionary(dictionary, dictionaryStart, dictionaryLength-dictionaryStart);
+            }
+            deflater.setInput(input, 0, inputLength);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(inputLength/4);
+            byte [] buffer = new byte[64 * 1024];
+            if(last){
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }
+            else{
+                // the flush is complete when the deflater no longer fills the buffer
+                int length;
+                do {
+                    length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, length);
+                } while (length==buffer.length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * waits for the oldest block to be compressed and writes it
+     * @throws IOException
+     */
+    private void writeBlock() throws IOException {
+        try {
+            out.write(pendingBlocks.remove().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing the output", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Problem compressing the output", e.getCause());
+        }
+    }
+
+    /**
+     * writes the blocks which have been compressed, without waiting for the others or for the current block
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        while (!pendingBlocks.isEmpty() && pendingBlocks.peek().isDone()) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    /**
+     * compresses the remaining data, writes the gzip trailer and closes the underlying stream
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed){
+            return;
+        }
+        closed = true;
+        try (OutputStream outputStream = out) {
+            submitBlock(true);
+            while (!pendingBlocks.isEmpty()) {
+                writeBlock();
+            }
+            writeInt(outputStream, (int) crc.getValue());
+            writeInt(outputStream, (int) size);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * writes an integer in little endian order, as gzip requires
+     * @param outputStream the stream
+     * @param value        the integer
+     * @throws IOException
+     */
+    private static void writeInt(OutputStream outputStream, int value) throws IOException {
+        outputStream.write(value & 0xff);
+        outputStream.write((value >> 8) & 0xff);
+        outputStream.write((value >> 16) & 0xff);
+        outputStream.write((value >> 24) & 0xff);
+    }
+
+    /**
+     * checks that the stream has not been closed
+     * @throws IOException
+     */
+    private void ensureOpen() throws IOException {
+        if(closed){
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads and writes the manifest of a sharded output, and merges the shards into a single DECOR file
+ *
+ * The manifest has a line for each shard, in the order of the DECOR file: the section, the version (empty for the
+ * parts shared by all versions) and the file name, separated by tabs. Every shard is a piece of the DECOR file, so
+ * concatenating them in this order gives the same file as a run without shards.
+ *
+ * Usage: java -cp (jar) palgacodebooktoxml.utils.ShardMerger (manifest) (output file)
+ * The output is written as gzip if its name ends with .gz
+ */
+public class ShardMerger {
+    public static final String MANIFEST_FILE_NAME = "manifest.txt";
+    private static final String HEADER = "# section\tversion\tfile; concatenating the files in this order gives the DECOR file";
+
+    private ShardMerger(){}
+
+    public static void main(String [] args) {
+        if(args.length!=2){
+            System.err.println("Usage: java -cp <jar> palgacodebooktoxml.utils.ShardMerger <manifest> <output file>");
+            System.exit(2);
+        }
+        try {
+            merge(Paths.get(args[0]), Paths.get(args[1]));
+        } catch (IOException e){
+            System.err.println("Problem merging the shards: "+e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * creates a line of the manifest
+     * @param section      the section of the DECOR file in the shard, e.g. dataset
+     * @param versionLabel the version of the shard, or an empty string for a shard shared by all versions
+     * @param fileName     the name of the shard, relative to the manifest
+     * @return the line
+     */
+    public static String manifestLine(String section, String versionLabel, String fileName){
+        return section+"\t"+versionLabel+"\t"+fileName;
+    }
+
+    /**
+     * writes the manifest
+     * @param manifestFile  the manifest
+     * @param manifestLines the lines for the shards, in the order of the DECOR file
+     * @throws IOException
+     */
+    public static void writeManifest(Path manifestFile, List<String> manifestLines) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        lines.addAll(manifestLines);
+        Files.write(manifestFile, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * reads the shards listed in a manifest
+     * @param manifestFile the manifest
+     * @return the shards, in the order of the DECOR file
+     * @throws IOException
+     */
+    public static List<Path> readManifest(Path manifestFile) throws IOException {
+        Path directory = manifestFile.toAbsolutePath().getParent();
+        List<Path> shards = new ArrayList<>();
+        for(String line:Files.readAllLines(manifestFile, StandardCharsets.UTF_8)){
+            if(line.trim().isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            String [] fields = line.split("\t");
+            shards.add(directory.resolve(fields[fields.length-1]));
+        }
+        return shards;
+    }
+
+    /**
+     * concatenates the shards listed in a manifest, copying their bytes without decoding them
+     * @param manifestFile the manifest
+     * @param outputFile   the DECOR file; compressed with gzip if its name ends with .gz
+     * @throws IOException
+     */
+    public static void merge(Path manifestFile, Path outputFile) throws IOException {
+        List<Path> shards = readManifest(manifestFile);
+        try (Utf8FileWriter writer = createWriter(outputFile)) {
+            for(Path shard:shards){
+                writer.transferFrom(shard);
+            }
+        }
+    }
+
+    /**
+     * opens the merged file
+     * @param outputFile the file
+     * @return the writer
+     * @throws IOException
+     */
+    private static Utf8FileWriter createWriter(Path outputFile) throws IOException {
+        if(!outputFile.getFileName().toString().toLowerCase().endsWith(".gz")){
+            return new Utf8FileWriter(outputFile);
+        }
+        OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(outputFile), 64 * 1024);
+        return new Utf8FileWriter(Channels.newChannel(outputStream));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Header of a worksheet, used to resolve column names to column indexes once per sheet
+ */
+public class SheetHeader {
+    private final String sheetName;
+    private final List<String> headerList;
+    private final List<String> missingColumns = new ArrayList<>();
+
+    /**
+     * create the header for a sheet
+     * @param sheetName    name of the sheet
+     * @param headerValues values of the header row
+     */
+    public SheetHeader(String sheetName, List<String> headerValues){
+        this.sheetName = sheetName;
+        this.headerList = ExcelUtils.getHeaderAsList(headerValues);
+    }
+
+    /**
+     * returns the index of a column. A missing column is remembered, so it can be reported once for the sheet
+     * @param columnName name of the column (lower case)
+     * @return the index of the column, or -1 if the header does not contain the column
+     */
+    public int getColumnIndex(String columnName){
+        int index = headerList.indexOf(columnName);
+        if(index==-1){
+            // if the header isn't found something is wrong with our codebook
+            missingColumns.add(columnName);
+        }
+        return index;
+    }
+
+    /**
+     * returns the columns which were asked for, but are not in the header
+     * @return list with the missing columns
+     */
+    public List<String> getMissingColumns(){
+        return missingColumns;
+    }
+
+    /**
+     * returns the name of the sheet
+     * @return the name of the sheet
+     */
+    public String getSheetName(){
+        return sheetName;
+    }
+}
@@ -25,21 +25,87 @@ package palgacodebooktoxml.utils;
 public class StringUtils {
     /**
      * does some string replacements to ensure the value does not interfere with XML syntax
+     * - & < > ' " are replaced by their entities, ≥ and ≤ by &gt;= and &lt;=
+     * - runs of whitespace (including e.g. the a0 non-breaking space) become a single normal space
+     * - the value is trimmed
+     * This is done in a single pass; if nothing has to change, the value itself is returned
      * @param value the value to check
      * @return an acceptable xml value
      */
     static String prepareValueForXML(String value){
-        value = value.replaceAll("&", "&amp;");
-        value = value.replaceAll("<", "&lt;");
-        value = value.replaceAll(">", "&gt;");
-        value = value.replaceAll("'", "&apos;");
-        value = value.replaceAll("\"", "&quot;");
-        value = value.replaceAll("≥", "&gt;=");
-        value = value.replaceAll("≤", "&lt;=");
-        // replace all whitespace characters with a normal space
-        // this due to an a0 character appearing
-        value = value.replaceAll("[\\p{Zs}\\s]+", " ");
-        return value.trim();
+        // trim; whitespace at the ends would be collapsed to a space, which trim() then removes
+        int start = 0;
+        int end = value.length();
+        while(start<end && isTrimmed(value.charAt(start))){
+            start++;
+        }
+        while(end>start && isTrimmed(value.charAt(end-1))){
+            end--;
+        }
+
+        // only create a new string once something has to be replaced
+        StringBuilder stringBuilder = null;
+        int i = start;
+        while(i<end){
+            char c = value.charAt(i);
+            int next = i+1;
+            String replacement;
+            switch (c){
+                case '&': replacement = "&amp;"; break;
+                case '<': replacement = "&lt;"; break;
+                case '>': replacement = "&gt;"; break;
+                case '\'': replacement = "&apos;"; break;
+                case '"': replacement = "&quot;"; break;
+                case '≥': replacement = "&gt;="; break;
+                case '≤': replacement = "&lt;="; break;
+                default:
+                    replacement = null;
+                    if(isWhitespace(c)){
+                        while(next<end && isWhitespace(value.charAt(next))){
+                            next++;
+                        }
+                        // a single normal space can stay as it is
+                        if(c!=' ' || next>i+1){
+                            replacement = " ";
+                        }
+                    }
+            }
+
+            if(replacement!=null){
+                if(stringBuilder==null){
+                    stringBuilder = new StringBuilder(end-start+16);
+                    stringBuilder.append(value, start, i);
+                }
+                stringBuilder.append(replacement);
+            }
+            else if(stringBuilder!=null){
+                stringBuilder.append(value, i, next);
+            }
+            i = next;
+        }
+
+        if(stringBuilder!=null){
+            return stringBuilder.toString();
+        }
+        return value.substring(start, end);
+    }
+
+    /**
+     * whether a character is whitespace, i.e. matches [\p{Zs}\s]
+     * @param c the character
+     * @return true/false
+     */
+    private static boolean isWhitespace(char c){
+        return c==' ' || c=='\t' || c=='\n' || c==0x0B || c=='\f' || c=='\r' || (c>=0x80 && Character.getType(c)==Character.SPACE_SEPARATOR);
+    }
+
+    /**
+     * whether a character is removed when it is at the start or end of a value (see String.trim())
+     * @param c the character
+     * @return true/false
+     */
+    private static boolean isTrimmed(char c){
+        return c<=' ' || isWhitespace(c);
     }
 
     public static String removeNonAlphanumericCharacters(String value){
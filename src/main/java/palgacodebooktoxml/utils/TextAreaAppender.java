@@ -19,8 +19,11 @@
 
 package palgacodebooktoxml.utils;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.scene.control.TextArea;
+import javafx.util.Duration;
 import org.apache.logging.log4j.core.Filter;
 import org.apache.logging.log4j.core.Layout;
 import org.apache.logging.log4j.core.LogEvent;
@@ -32,6 +35,12 @@ import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 import org.apache.logging.log4j.core.layout.PatternLayout;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * TextAreaAppender, log4j. Uses the log4j2.xml for its parameters
@@ -39,6 +48,11 @@ import java.io.Serializable;
  * elementType: Name of the corresponding category of elements this plugin belongs under. In our case
  * the appender value means indicates an Appender plugin, which is located in the Appender tag in the xml
  * printObject: set to true for appender plugin
+ *
+ * The messages are not sent to the JavaFX Application Thread one by one, as that floods the thread during large runs.
+ * Instead they are collected in a queue, which is emptied into the textArea a fixed number of times per second.
+ * Only the most recent MAX_LINES messages are kept; older ones are dropped and the number of dropped messages is
+ * shown at the top of the textArea.
  */
 @Plugin(
     category = "Core",
@@ -47,7 +61,22 @@ import java.io.Serializable;
     printObject = true
 )
 public class TextAreaAppender extends AbstractAppender {
+    private static final int MAX_LINES = 5000;
+    private static final Duration FLUSH_INTERVAL = Duration.millis(100);
+
+    // messages waiting to be shown, filled by any thread and emptied on the JavaFX Application Thread
+    private static final Queue<String> pendingMessages = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pendingCount = new AtomicInteger();
+    private static final AtomicLong droppedCount = new AtomicLong();
+
+    // only used on the JavaFX Application Thread
+    private static final Deque<String> shownMessages = new ArrayDeque<>();
+    private static int expectedLength = -1;
+    private static long shownDroppedCount = 0;
+    private static long droppedBeforeClear = 0;
+
     private static TextArea textArea;
+    private static Timeline flushTimeline;
 
     private TextAreaAppender(String name, Filter filter, Layout<? extends Serializable> layout) {
         super(name, filter, layout);
@@ -86,27 +115,72 @@ public class TextAreaAppender extends AbstractAppender {
      */
     public static void setTextArea(TextArea textArea) {
         TextAreaAppender.textArea = textArea;
+        if(flushTimeline==null) {
+            flushTimeline = new Timeline(new KeyFrame(FLUSH_INTERVAL, event -> flush()));
+            flushTimeline.setCycleCount(Timeline.INDEFINITE);
+            Platform.runLater(flushTimeline::play);
+        }
     }
 
     /**
-     * Appender receives a LogEvent and appends it to the textArea
+     * Appender receives a LogEvent and queues it for the textArea
      *
      * @param event Log event
      */
     @Override
     public void append(LogEvent event) {
         // format the message and transform it into a String
-        final String message = new String(getLayout().toByteArray(event));
+        pendingMessages.add(new String(getLayout().toByteArray(event)));
 
-        // append log text to TextArea, run on the JavaFX Application Thread
-        Platform.runLater(() -> {
-            try {
-                if (textArea != null) {
-                    textArea.appendText(message);
+        // if the textArea cannot keep up, drop the oldest messages; they would not be shown anyway
+        if(pendingCount.incrementAndGet()>MAX_LINES && pendingMessages.poll()!=null){
+            pendingCount.decrementAndGet();
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * moves the queued messages to the textArea in a single update. Runs on the JavaFX Application Thread
+     */
+    private static void flush(){
+        if(textArea==null || pendingMessages.isEmpty()) return;
+        try {
+            // the textArea was changed by someone else, e.g. cleared, so the messages we showed are gone
+            if (textArea.getLength() != expectedLength) {
+                shownMessages.clear();
+                shownDroppedCount = droppedCount.get();
+                droppedBeforeClear = shownDroppedCount;
+            }
+
+            StringBuilder batch = new StringBuilder();
+            String message;
+            while ((message = pendingMessages.poll()) != null) {
+                pendingCount.decrementAndGet();
+                batch.append(message);
+                shownMessages.addLast(message);
+            }
+            // trim well below the maximum, so the text is not rebuilt on every flush of a long run
+            if (shownMessages.size() > MAX_LINES) {
+                while (shownMessages.size() > MAX_LINES*3/4) {
+                    shownMessages.removeFirst();
+                    droppedCount.incrementAndGet();
                 }
-            } catch (Exception e) {
-                System.err.println("Exception occurred while appending to the text area: " + e.getMessage());
             }
-        });
+
+            if (droppedCount.get() == shownDroppedCount) {
+                textArea.appendText(batch.toString());
+            }
+            else {
+                // messages were dropped, so rebuild the text from the messages we still have
+                shownDroppedCount = droppedCount.get();
+                StringBuilder text = new StringBuilder("... " + (shownDroppedCount-droppedBeforeClear) + " earlier log lines were dropped ...\n");
+                shownMessages.forEach(text::append);
+                textArea.setText(text.toString());
+                textArea.positionCaret(textArea.getLength());
+            }
+            expectedLength = textArea.getLength();
+        } catch (Exception e) {
+            System.err.println("Exception occurred while appending to the text area: " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2017 NKI/AvL; VUmc 2018/2019/2020
+ *
+ * This file is part of PALGA Protocol Codebook to XML.
+ *
+ * PALGA Protocol Codebook to XML is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PALGA Protocol Codebook to XML is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PALGA Protocol Codebook to XML. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package palgacodebooktoxml.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writer which writes a file (or another channel) in UTF-8, whatever the default charset of the platform is
+ *
+ * The characters are encoded in chunks, which are copied into a direct buffer that is written to the file channel
+ * when it is full. Most of the output is ASCII, for which the chunk is a plain copy. The buffers are pooled, so the
+ * temporary files and the output of a run do not each allocate a new one.
+ * Characters which cannot be encoded (a lone surrogate) are written as '?', like the encoders of the JDK do.
+ */
+public class Utf8FileWriter extends Writer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // number of buffers kept for reuse; a run uses three at the same time, more when rendered parts are spilled
+    private static final int POOL_SIZE = 4;
+    private static final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private static final byte REPLACEMENT = '?';
+    // characters encoded at a time; a character takes at most three bytes, a surrogate pair four
+    private static final int CHUNK_SIZE = 4 * 1024;
+
+    private final WritableByteChannel channel;
+    private ByteBuffer buffer;
+    // the first half of a surrogate pair, when the second half is in the next write
+    private char highSurrogate = 0;
+    private final char [] chars = new char[CHUNK_SIZE];
+    private final byte [] bytes = new byte[CHUNK_SIZE*3+1];
+
+    /**
+     * opens a file for writing, replacing its contents
+     * @param file the file
+     * @throws IOException
+     */
+    public Utf8FileWriter(Path file) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * writes to a channel, e.g. one which compresses the output; closing the writer closes the channel
+     * @param channel the channel
+     */
+    public Utf8FileWriter(WritableByteChannel channel){
+        this.channel = channel;
+        this.buffer = acquireBuffer();
+    }
+
+    /**
+     * takes a buffer from the pool, or allocates one if the pool is empty
+     * @return the buffer, cleared
+     */
+    private static ByteBuffer acquireBuffer(){
+        ByteBuffer pooledBuffer = bufferPool.poll();
+        if(pooledBuffer==null){
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        pooledBuffer.clear();
+        return pooledBuffer;
+    }
+
+    /**
+     * returns a buffer to the pool, unless the pool is full
+     * @param releasedBuffer the buffer
+     */
+    private static void releaseBuffer(ByteBuffer releasedBuffer){
+        if(bufferPool.size()<POOL_SIZE){
+            bufferPool.add(releasedBuffer);
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            chars[0] = (char) c;
+            writeChunk(chars, 0, 1);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            for (int i = off; i < off+len; i += CHUNK_SIZE) {
+                writeChunk(cbuf, i, Math.min(CHUNK_SIZE, off+len-i));
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            for (int i = off; i < off+len; i += CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, off+len-i);
+                str.getChars(i, i+length, chars, 0);
+                writeChunk(chars, 0, length);
+            }
+        }
+    }
+
+    /**
+     * encodes at most CHUNK_SIZE characters and adds them to the buffer
+     * @param cbuf the characters
+     * @param off  the first character
+     * @param len  the number of characters
+     * @throws IOException
+     */
+    private void writeChunk(char[] cbuf, int off, int len) throws IOException {
+        // both loops over an ASCII chunk have no branches, so the compiler can vectorise them
+        int bits = 0;
+        for (int i = 0; i < len; i++) {
+            bits |= cbuf[off+i];
+        }
+        int length;
+        if(bits<0x80 && highSurrogate==0){
+            for (int i = 0; i < len; i++) {
+                bytes[i] = (byte) cbuf[off+i];
+            }
+            length = len;
+        }
+        else {
+            length = encode(cbuf, off, len);
+        }
+
+        if(buffer.remaining()<length){
+            drain();
+        }
+        buffer.put(bytes, 0, length);
+    }
+
+    /**
+     * encodes characters which are not all ASCII into the byte array
+     * @param cbuf the characters
+     * @param off  the first character
+     * @param len  the number of characters
+     * @return the number of bytes
+     */
+    private int encode(char[] cbuf, int off, int len){
+        int length = 0;
+        for (int i = off; i < off+len; i++) {
+            char c = cbuf[i];
+            if(highSurrogate!=0){
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if(Character.isLowSurrogate(c)){
+                    int codePoint = Character.toCodePoint(high, c);
+                    bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                    continue;
+                }
+                // the high surrogate had no low surrogate following it
+                bytes[length++] = REPLACEMENT;
+            }
+
+            if(c<0x80){
+                bytes[length++] = (byte) c;
+            }
+            else if(c<0x800){
+                bytes[length++] = (byte) (0xC0 | (c >> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if(Character.isHighSurrogate(c)){
+                highSurrogate = c;
+            }
+            else if(Character.isLowSurrogate(c)){
+                bytes[length++] = REPLACEMENT;
+            }
+            else{
+                bytes[length++] = (byte) (0xE0 | (c >> 12));
+                bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return length;
+    }
+
+    /**
+     * adds the replacement of a high surrogate which is not followed by its low surrogate
+     * @throws IOException
+     */
+    private void writePendingSurrogate() throws IOException {
+        if(highSurrogate!=0){
+            highSurrogate = 0;
+            if(!buffer.hasRemaining()){
+                drain();
+            }
+            buffer.put(REPLACEMENT);
+        }
+    }
+
+    /**
+     * writes the contents of the buffer to the file
+     * @throws IOException
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * appends the bytes of a file, which must be UTF-8 as well, without decoding and encoding them again
+     * @param file the file
+     * @throws IOException
+     */
+    public void transferFrom(Path file) throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            writePendingSurrogate();
+            drain();
+            try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = source.size();
+                long position = 0;
+                while (position<size) {
+                    position += source.transferTo(position, size-position, channel);
+                }
+            }
+        }
+    }
+
+    /**
+     * writes the buffered characters to the file. A high surrogate is kept, as its low surrogate may still follow
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            drain();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if(buffer==null){
+                return;
+            }
+            try {
+                writePendingSurrogate();
+                drain();
+            } finally {
+                channel.close();
+                releaseBuffer(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    /**
+     * checks that the writer has not been closed
+     * @throws IOException
+     */
+    private void ensureOpen() throws IOException {
+        if(buffer==null){
+            throw new IOException("Stream closed");
+        }
+    }
+}